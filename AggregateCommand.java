@@ -0,0 +1,72 @@
+package org.dima.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Класс для сериализации в поток команды Aggregate - подсчета количества, суммы, минимума,
+ * максимума и среднего числовых полей по группам фильмов на сервере
+ */
+public class AggregateCommand extends MovieCommand {
+    /**
+     * поля, которые считаются, если поля не заданы
+     */
+    public static final List<MovieField> DEFAULT_MEASURES = Collections.unmodifiableList(
+            Arrays.asList(MovieField.OSCARS, MovieField.COORDINATE_X, MovieField.COORDINATE_Y));
+
+    private final GroupKey groupBy;
+    private final ArrayList<MovieField> measures;
+    private final MoviePredicate filter;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param groupBy признак группировки или null для одной группы из всех фильмов
+     * @param measures числовые поля или пустой список для полей по умолчанию
+     * @param filter условие отбора фильмов или null
+     */
+    public AggregateCommand(GroupKey groupBy, List<MovieField> measures, MoviePredicate filter) {
+        for (MovieField measure : measures) {
+            if (!measure.isNumeric()) {
+                throw new IllegalArgumentException("Field " + measure + " is not numeric");
+            }
+        }
+        this.groupBy = groupBy;
+        this.measures = new ArrayList<MovieField>(measures.isEmpty() ? DEFAULT_MEASURES : measures);
+        this.filter = filter;
+    }
+
+    /**
+     * Функция получения значения поля groupBy
+     * @return возвращает значение поля groupBy
+     */
+    public GroupKey getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * Функция получения значения поля measures
+     * @return возвращает значение поля measures
+     */
+    public List<MovieField> getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Функция получения значения поля filter
+     * @return возвращает значение поля filter
+     */
+    public MoviePredicate getFilter() {
+        return filter;
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateCommand{" +
+                "groupBy=" + groupBy +
+                ", measures=" + measures +
+                ", filter=" + filter +
+                '}';
+    }
+}
@@ -0,0 +1,185 @@
+package org.dima.movies;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результат команды Aggregate: по строке на группу фильмов с количеством фильмов
+ * и суммой, минимумом, максимумом и средним каждого числового поля
+ */
+public class AggregateTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<String> measures;
+    private final ArrayList<Row> rows;
+
+    private AggregateTable(List<String> measures, Collection<Row> rows) {
+        this.measures = new ArrayList<String>(measures);
+        this.rows = new ArrayList<Row>(rows);
+        this.rows.sort(Comparator.comparing(Row::getKey, Comparator.nullsLast(Row.KEY_ORDER)));
+    }
+
+    /**
+     * Функция получения названий числовых полей
+     * @return названия полей в порядке значений строк
+     */
+    public List<String> getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Функция получения строк таблицы
+     * @return строки в порядке возрастания группы
+     */
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    /**
+     * Строка таблицы - итоги одной группы фильмов
+     */
+    public static class Row implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static final Comparator<Comparable> KEY_ORDER = Comparator.naturalOrder();
+
+        private final Comparable<?> key;
+        private long count = 0;
+        private final double[] sum;
+        private final double[] min;
+        private final double[] max;
+
+        Row(Comparable<?> key, int measures) {
+            this.key = key;
+            this.sum = new double[measures];
+            this.min = new double[measures];
+            this.max = new double[measures];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        void add(double[] values) {
+            count++;
+            for (int i = 0; i < values.length; i++) {
+                sum[i] += values[i];
+                min[i] = Math.min(min[i], values[i]);
+                max[i] = Math.max(max[i], values[i]);
+            }
+        }
+
+        void addCount(long count) {
+            this.count += count;
+        }
+
+        void merge(Row other) {
+            count += other.count;
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += other.sum[i];
+                min[i] = Math.min(min[i], other.min[i]);
+                max[i] = Math.max(max[i], other.max[i]);
+            }
+        }
+
+        /**
+         * Функция получения группы
+         * @return значение признака группы или null
+         */
+        public Comparable<?> getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum(int measure) {
+            return sum[measure];
+        }
+
+        public double getMin(int measure) {
+            return min[measure];
+        }
+
+        public double getMax(int measure) {
+            return max[measure];
+        }
+
+        public double getAverage(int measure) {
+            return count > 0 ? sum[measure] / count : Double.NaN;
+        }
+    }
+
+    /**
+     * Накопитель итогов по группам. Накопители частей коллекции можно сливать,
+     * поэтому итоги считаются за один параллельный проход
+     */
+    public static class Accumulator {
+        private final List<String> measures;
+        private final Map<Comparable<?>, Row> groups = new HashMap<Comparable<?>, Row>();
+
+        /**
+         * Конструктор накопителя
+         * @param measures названия числовых полей
+         */
+        public Accumulator(List<String> measures) {
+            this.measures = measures;
+        }
+
+        /**
+         * учесть фильм
+         * @param key группа фильма
+         * @param values значения числовых полей фильма
+         */
+        public void add(Comparable<?> key, double[] values) {
+            groups.computeIfAbsent(key, k -> new Row(k, measures.size())).add(values);
+        }
+
+        /**
+         * учесть несколько фильмов группы, для таблицы без числовых полей
+         * @param key группа фильмов
+         * @param count количество фильмов
+         */
+        public void addCount(Comparable<?> key, long count) {
+            groups.computeIfAbsent(key, k -> new Row(k, measures.size())).addCount(count);
+        }
+
+        /**
+         * слить с другим накопителем
+         * @param other накопитель
+         * @return этот накопитель
+         */
+        public Accumulator merge(Accumulator other) {
+            other.groups.values().forEach(this::merge);
+            return this;
+        }
+
+        /**
+         * слить с итогами готовой таблицы
+         * @param table таблица с теми же полями
+         * @return этот накопитель
+         */
+        public Accumulator merge(AggregateTable table) {
+            table.rows.forEach(this::merge);
+            return this;
+        }
+
+        private void merge(Row row) {
+            groups.computeIfAbsent(row.key, k -> new Row(k, measures.size())).merge(row);
+        }
+
+        /**
+         * Функция получения таблицы итогов
+         * @return таблица
+         */
+        public AggregateTable toTable() {
+            return new AggregateTable(measures, groups.values());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.dima.server;
+
+import org.dima.movies.Movie;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Куча, хранящая k первых фильмов в заданном порядке.
+ * В вершине кучи лежит худший из отобранных фильмов, поэтому каждый следующий фильм
+ * сравнивается только с ним, и отбор из n фильмов стоит O(n log k).
+ * Кучи частей коллекции можно сливать, поэтому отбор выполняется и параллельным потоком
+ */
+final class BoundedHeap {
+    private final Comparator<Movie> order;
+    private final int k;
+    private final PriorityQueue<Movie> queue;
+
+    BoundedHeap(Comparator<Movie> order, int k) {
+        this.order = order;
+        this.k = k;
+        this.queue = new PriorityQueue<Movie>(Math.min(k, 1024) + 1, order.reversed());
+    }
+
+    /**
+     * учесть фильм
+     * @param movie фильм
+     */
+    void add(Movie movie) {
+        if (queue.size() < k) {
+            queue.add(movie);
+        } else if (order.compare(movie, queue.peek()) < 0) {
+            queue.poll();
+            queue.add(movie);
+        }
+    }
+
+    /**
+     * слить с другой кучей
+     * @param other куча с тем же порядком
+     * @return эта куча
+     */
+    BoundedHeap merge(BoundedHeap other) {
+        other.queue.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * отобранные фильмы
+     * @return не больше k фильмов в заданном порядке
+     */
+    List<Movie> toList() {
+        List<Movie> result = new ArrayList<Movie>(queue);
+        result.sort(order);
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+package org.dima.server;
+
+import org.dima.movies.Coordinates;
+import org.dima.movies.Location;
+import org.dima.movies.Movie;
+import org.dima.movies.Person;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Пул канонических экземпляров повторяющихся частей фильмов.
+ * Имена режиссеров, номера паспортов, названия мест, а также одинаковые
+ * {@link Location}, {@link Coordinates} и {@link Person} разных фильмов заменяются
+ * одним общим экземпляром. Пул хранит слабые ссылки, поэтому экземпляр, на который
+ * больше не ссылается ни один фильм, удаляется сборщиком мусора.
+ * Общие экземпляры не должны изменяться после вставки фильма в коллекцию
+ */
+final class Canonicalizer {
+    /**
+     * оценка размера в куче объекта String с массивом символов без учета самих символов
+     */
+    private static final int STRING_BYTES = 40;
+    private static final int COORDINATES_BYTES = 24;
+    private static final int LOCATION_BYTES = 32;
+    private static final int PERSON_BYTES = 32;
+
+    private final Map<Object, WeakReference<Object>> pool = new WeakHashMap<Object, WeakReference<Object>>();
+    private long savedBytes = 0;
+
+    /**
+     * заменить части фильма каноническими экземплярами
+     * @param movie фильм
+     */
+    synchronized void canonicalize(Movie movie) {
+        movie.setCoordinates(intern(movie.getCoordinates(), COORDINATES_BYTES));
+        Person director = movie.getDirector();
+        if (director != null) {
+            Location location = director.getLocation();
+            if (location != null) {
+                location.setName(intern(location.getName()));
+                director.setLocation(intern(location, LOCATION_BYTES));
+            }
+            director.setName(intern(director.getName()));
+            director.setPassportID(intern(director.getPassportID()));
+            movie.setDirector(intern(director, PERSON_BYTES));
+        }
+    }
+
+    /**
+     * оценка освобожденной памяти
+     * @return сколько байт кучи не было занято благодаря замене повторов общими экземплярами
+     */
+    synchronized long getSavedBytes() {
+        return savedBytes;
+    }
+
+    private String intern(String value) {
+        return value != null ? intern(value, STRING_BYTES + value.length()) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T intern(T value, int bytes) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<Object> reference = pool.get(value);
+        Object canonical = reference != null ? reference.get() : null;
+        if (canonical == null) {
+            pool.put(value, new WeakReference<Object>(value));
+            return value;
+        }
+        if (canonical != value) {
+            savedBytes += bytes;
+        }
+        return (T) canonical;
+    }
+}
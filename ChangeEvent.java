@@ -0,0 +1,124 @@
+package org.dima.commands;
+
+import org.dima.movies.Movie;
+
+import java.io.Serializable;
+
+/**
+ * Класс для сериализации в поток события изменения коллекции, которое сервер
+ * отправляет подписчику после команды Subscribe
+ */
+public class ChangeEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        INSERT,
+        UPDATE,
+        REMOVE,
+        /**
+         * подписчик не успевал получать события, часть событий пропущена.
+         * Подписчик должен заново прочитать коллекцию, дальше события идут от версии этого события.
+         * Номер события RESYNC равен 0
+         */
+        RESYNC
+    }
+
+    private final Type type;
+    private final long id;
+    private final Movie movie;
+    private final long version;
+    private final long sequence;
+    private final long time;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями, время события - текущее
+     * @param type тип изменения
+     * @param id индентификатор фильма
+     * @param movie новое значение фильма или null для удаления и пропуска событий
+     * @param version версия коллекции после изменения
+     * @param sequence номер события
+     */
+    public ChangeEvent(Type type, long id, Movie movie, long version, long sequence) {
+        this(type, id, movie, version, sequence, System.currentTimeMillis());
+    }
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param type тип изменения
+     * @param id индентификатор фильма
+     * @param movie новое значение фильма или null для удаления и пропуска событий
+     * @param version версия коллекции после изменения
+     * @param sequence номер события
+     * @param time время изменения в миллисекундах от начала эпохи
+     */
+    public ChangeEvent(Type type, long id, Movie movie, long version, long sequence, long time) {
+        this.type = type;
+        this.id = id;
+        this.movie = movie;
+        this.version = version;
+        this.sequence = sequence;
+        this.time = time;
+    }
+
+    /**
+     * Функция получения значения поля type
+     * @return возвращает значение поля type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Функция получения значения поля id
+     * @return возвращает значение поля id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Функция получения значения поля movie
+     * @return возвращает значение поля movie
+     */
+    public Movie getMovie() {
+        return movie;
+    }
+
+    /**
+     * Функция получения значения поля version
+     * @return возвращает значение поля version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Функция получения номера события. Одна версия коллекции может содержать несколько
+     * изменений (например, после clear), но номер у каждого события свой: номера растут на 1
+     * в порядке, в котором события получают подписчики
+     * @return возвращает значение поля sequence
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Функция получения значения поля time
+     * @return возвращает значение поля time
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" +
+                "type=" + type +
+                ", id=" + id +
+                ", movie=" + movie +
+                ", version=" + version +
+                ", sequence=" + sequence +
+                ", time=" + time +
+                '}';
+    }
+}
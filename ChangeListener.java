@@ -0,0 +1,17 @@
+package org.dima.server;
+
+import org.dima.commands.ChangeEvent;
+import org.dima.movies.Movie;
+
+/**
+ * Получатель событий изменения коллекции. Вызывается потоком, изменившим коллекцию,
+ * под блокировкой записи и монитором нумерации событий после публикации новой версии,
+ * поэтому должен только запоминать событие и быстро возвращать управление
+ */
+public interface ChangeListener {
+    /**
+     * @param event событие изменения
+     * @param previous значение фильма до изменения или null для вставки
+     */
+    void changed(ChangeEvent event, Movie previous);
+}
@@ -0,0 +1,40 @@
+package org.dima.movies;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Все фильмы коллекции на одной версии - ответ основного сервера на запрос
+ * начального состояния копии коллекции
+ */
+public class CollectionSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+    private final long sequence;
+    private final ArrayList<Movie> movies;
+
+    /**
+     * Конструктор снимка
+     * @param version версия коллекции
+     * @param sequence номер последнего события изменения, вошедшего в снимок
+     * @param movies фильмы коллекции на этой версии
+     */
+    public CollectionSnapshot(long version, long sequence, ArrayList<Movie> movies) {
+        this.version = version;
+        this.sequence = sequence;
+        this.movies = movies;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public ArrayList<Movie> getMovies() {
+        return movies;
+    }
+}
@@ -0,0 +1,57 @@
+package org.dima.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR обработки одной команды сервером: от десериализации команды до отправки ответа
+ */
+@Name("org.dima.Command")
+@Label("Movie Command")
+@Category("Movies")
+@Description("Обработка команды клиента")
+final class CommandEvent extends Event {
+    private static final int MAX_ARGUMENTS = 256;
+
+    @Label("Command")
+    String command;
+
+    @Label("Arguments")
+    String arguments;
+
+    @Label("Result")
+    @Description("Тип ответа или CACHED для ответа из кэша ответов")
+    String result;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestSize;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseSize;
+
+    /**
+     * завершить событие и записать его, если запись событий включена
+     * @param command команда
+     * @param result тип ответа
+     * @param responseSize размер ответа в байтах
+     */
+    void commit(Object command, String result, long responseSize) {
+        end();
+        if (shouldCommit()) {
+            this.command = command.getClass().getSimpleName();
+            String text = command.toString();
+            if (!text.startsWith(command.getClass().getName() + "@")) {
+                this.arguments = text.length() > MAX_ARGUMENTS ? text.substring(0, MAX_ARGUMENTS) + "..." : text;
+            }
+            this.result = result;
+            this.responseSize = responseSize;
+            commit();
+        }
+    }
+}
@@ -14,7 +14,11 @@ public class CommandResult implements Serializable {
     public enum Type {
         SUCCESS,
         WARNING,
-        ERROR
+        ERROR,
+        /**
+         * версия записи не совпала с ожидаемой, изменение не выполнено
+         */
+        CONFLICT
     }
 
     private final Type type;
@@ -35,7 +39,7 @@ public class CommandResult implements Serializable {
     public CommandResult(Type code, String error) {
         this.type = code;
         this.error = error;
-        if(code == Type.WARNING) {
+        if(code == Type.WARNING || code == Type.CONFLICT) {
             DbWorker.logger.warn(error);
         } else if(code == Type.ERROR) {
             DbWorker.logger.error(error);
@@ -0,0 +1,119 @@
+package org.dima.server;
+
+import org.dima.commands.CommandResult;
+import org.dima.commands.MovieCommand;
+import org.dima.movies.ServerStatistics;
+import org.dima.tools.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Статистика обработки команд сервером. Для каждого типа команды и этапа обработки
+ * ведется своя гистограмма задержек, гистограммы создаются при первой команде типа,
+ * после этого запись не выделяет памяти
+ */
+public class CommandStats {
+    /**
+     * Этапы обработки команды
+     */
+    public enum Phase {
+        /**
+         * десериализация команды
+         */
+        DECODE,
+        /**
+         * выполнение команды или поиск ответа в кэше ответов
+         */
+        EXECUTE,
+        /**
+         * запись коллекции в файл после изменения
+         */
+        PERSIST,
+        /**
+         * сериализация ответа
+         */
+        ENCODE,
+        /**
+         * отправка ответа в канал
+         */
+        WRITE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final CommandResult.Type[] TYPES = CommandResult.Type.values();
+
+    private final Map<Class<?>, LatencyHistogram[]> histograms = new ConcurrentHashMap<Class<?>, LatencyHistogram[]>();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong cachedAnswers = new AtomicLong();
+    private final AtomicLongArray results = new AtomicLongArray(TYPES.length);
+
+    private static LatencyHistogram[] newPhases(Class<?> type) {
+        LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+        return phases;
+    }
+
+    /**
+     * записать задержку этапа
+     * @param command команда
+     * @param phase этап
+     * @param nanos задержка в наносекундах
+     */
+    public void record(MovieCommand command, Phase phase, long nanos) {
+        histograms.computeIfAbsent(command.getClass(), CommandStats::newPhases)[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * учесть принятые байты
+     * @param bytes количество байт
+     */
+    public void received(long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    /**
+     * учесть отправленный ответ
+     * @param type тип ответа или null для ответа из кэша ответов
+     * @param bytes количество байт
+     */
+    public void sent(CommandResult.Type type, long bytes) {
+        bytesOut.addAndGet(bytes);
+        if (type != null) {
+            results.incrementAndGet(type.ordinal());
+        } else {
+            cachedAnswers.incrementAndGet();
+        }
+    }
+
+    /**
+     * получить статистику для отправки клиенту
+     * @return процентили задержек по командам и этапам и счетчики
+     */
+    public ServerStatistics snapshot() {
+        ServerStatistics statistics = new ServerStatistics(bytesIn.get(), bytesOut.get(), cachedAnswers.get());
+        List<Map.Entry<Class<?>, LatencyHistogram[]>> entries = new ArrayList<Map.Entry<Class<?>, LatencyHistogram[]>>(histograms.entrySet());
+        entries.sort(Comparator.comparing(entry -> entry.getKey().getSimpleName()));
+        for (Map.Entry<Class<?>, LatencyHistogram[]> entry : entries) {
+            for (Phase phase : PHASES) {
+                LatencyHistogram histogram = entry.getValue()[phase.ordinal()];
+                if (histogram.getCount() > 0) {
+                    statistics.addRow(new ServerStatistics.Row(entry.getKey().getSimpleName(), phase.name(), histogram.getCount(),
+                            histogram.percentile(50), histogram.percentile(99), histogram.percentile(99.9), histogram.getMax()));
+                }
+            }
+        }
+        for (CommandResult.Type type : TYPES) {
+            statistics.addResult(type.name(), results.get(type.ordinal()));
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,126 @@
+package org.dima.server;
+
+import org.dima.movies.Movie;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Проверка согласованности {@link MoviesDB} при одновременной работе потоков.
+ * Потоки-писатели вставляют, переименовывают и удаляют фильмы, потоки-читатели в это время
+ * читают коллекцию и проверяют, что каждый прочитанный список не содержит повторов.
+ * После остановки сверяются количество фильмов, индекс имен, индекс размеров и файл коллекции.
+ * Запуск: java org.dima.server.ConcurrencyCheck [писателей] [операций на писателя]
+ */
+public final class ConcurrencyCheck {
+    private ConcurrencyCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Path source = Files.createTempFile("movies-check", ".xml");
+        try (MoviesDB db = new MoviesDB(source)) {
+            List<String> errors = run(db, writers, operations);
+            int expected = writers * (operations - (operations + 2) / 3);
+            Map<Long, Movie> movies = db.getMovies();
+            if (movies.size() != expected) {
+                errors.add("collection has " + movies.size() + " movies, expected " + expected);
+            }
+            for (Movie movie : movies.values()) {
+                if (!movie.getId().equals(db.findByName(movie.getName()))) {
+                    errors.add("name index does not point to " + movie.getId() + " " + movie.getName());
+                }
+            }
+            if (db.getMoviesBySize().size() != movies.size()) {
+                errors.add("size index has " + db.getMoviesBySize().size() + " movies");
+            }
+            if (db.getInformation().getElements_count() != movies.size()) {
+                errors.add("info counts " + db.getInformation().getElements_count() + " movies");
+            }
+            db.save();
+            try (MoviesDB reloaded = new MoviesDB(source)) {
+                if (reloaded.getMovies().size() != movies.size()) {
+                    errors.add("reloaded " + reloaded.getMovies().size() + " movies");
+                }
+            }
+            if (!errors.isEmpty()) {
+                errors.stream().limit(20).forEach(System.out::println);
+                System.out.println("FAILED: " + errors.size() + " errors");
+                System.exit(1);
+            }
+            System.out.println("OK: " + writers + " writers x " + operations + " operations, " + movies.size() + " movies");
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    /**
+     * Каждый писатель вставляет operations фильмов, удаляет каждый третий и
+     * переименовывает каждый пятый из оставшихся; читатели работают, пока работают писатели
+     */
+    private static List<String> run(MoviesDB db, int writers, int operations) throws Exception {
+        List<String> errors = new ArrayList<String>();
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writes = new ArrayList<Future<?>>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            writes.add(executor.submit(() -> {
+                for (int i = 0; i < operations; i++) {
+                    String name = "Movie " + writer + "_" + i;
+                    db.insert(SampleMovies.movie(name, i));
+                    if (i % 3 == 0) {
+                        db.remove(name);
+                    } else if (i % 5 == 1) {
+                        Long id = db.findByName(name);
+                        Movie movie = SampleMovies.movie(name + " renamed", i);
+                        movie.setId(id);
+                        db.update(id, movie);
+                    }
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> reads = new ArrayList<Future<?>>();
+        for (int r = 0; r < 2; r++) {
+            reads.add(executor.submit(() -> {
+                while (writing.get()) {
+                    check(db.getMoviesBySize(), "size index", errors);
+                    check(db.filterByName("1"), "filterByName", errors);
+                    db.maxByName();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        writing.set(false);
+        for (Future<?> read : reads) {
+            read.get();
+        }
+        executor.shutdown();
+        return errors;
+    }
+
+    private static void check(List<Movie> movies, String source, List<String> errors) {
+        Set<Long> ids = new HashSet<Long>();
+        for (Movie movie : movies) {
+            if (!ids.add(movie.getId())) {
+                synchronized (errors) {
+                    errors.add(source + " returned movie " + movie.getId() + " twice");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.dima.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR подключения или отключения клиента
+ */
+@Name("org.dima.Connection")
+@Label("Client Connection")
+@Category("Movies")
+@Description("Подключение или отключение клиента")
+final class ConnectionEvent extends Event {
+    @Label("Action")
+    @Description("accept или close")
+    String action;
+
+    @Label("Remote Address")
+    String remoteAddress;
+
+    @Label("Clients")
+    @Description("Количество подключенных клиентов после события")
+    int clients;
+
+    /**
+     * записать событие
+     * @param action accept или close
+     * @param remoteAddress адрес клиента
+     * @param clients количество подключенных клиентов
+     */
+    static void emit(String action, Object remoteAddress, int clients) {
+        ConnectionEvent event = new ConnectionEvent();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.remoteAddress = String.valueOf(remoteAddress);
+            event.clients = clients;
+            event.commit();
+        }
+    }
+}
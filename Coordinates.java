@@ -2,6 +2,7 @@ package org.dima.movies;
 
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.Objects;
 import java.util.Scanner;
 
 /**
@@ -100,4 +101,26 @@ public class Coordinates implements CanValidate, Serializable {
                 ", y=" + y +
                 '}';
     }
+
+    /**
+     * сравнение координат по значению
+     * @param o объект для сравнения
+     * @return True-координаты совпадают
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Coordinates that = (Coordinates) o;
+        return Double.compare(that.x, x) == 0 && y == that.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y);
+    }
 }
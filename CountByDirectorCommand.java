@@ -0,0 +1,32 @@
+package org.dima.commands;
+
+/**
+ * Класс для сериализации в поток команды CountByDirector - подсчета фильмов
+ * каждого режиссера по номеру паспорта
+ */
+public class CountByDirectorCommand extends MovieCommand {
+    private final String name;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param name имя режиссеров, фильмы которых подсчитываются, или null для всех режиссеров
+     */
+    public CountByDirectorCommand(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Функция получения значения поля name
+     * @return возвращает значение поля name
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return "CountByDirectorCommand{" +
+                "name='" + name + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,109 @@
+package org.dima.commands;
+
+import org.dima.movies.CanValidate;
+
+/**
+ * Класс для сериализации в поток команды DateRange - получения страницы фильмов,
+ * значение поля со временем которых лежит в диапазоне, в порядке времени
+ */
+public class DateRangeCommand extends MovieCommand implements CanValidate {
+    private final TimeField field;
+    private final long from;
+    private final long to;
+    private final boolean descending;
+    private final int offset;
+    private final int limit;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param field поле со временем
+     * @param from начало диапазона включительно, значение {@link TimeField#parse(String)}
+     * @param to конец диапазона включительно, значение {@link TimeField#parse(String)}
+     * @param descending True-от поздних к ранним, False-от ранних к поздним
+     * @param offset количество пропускаемых фильмов
+     * @param limit размер страницы, 0 - без ограничения
+     */
+    public DateRangeCommand(TimeField field, long from, long to, boolean descending, int offset, int limit) {
+        if (field == null) {
+            throw new IllegalArgumentException("Field is not set");
+        }
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        this.field = field;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Проверка параметров команды
+     * @return True-параметры допустимы
+     */
+    @Override
+    public boolean validate() {
+        return field != null && offset >= 0 && limit >= 0;
+    }
+
+    /**
+     * Функция получения значения поля field
+     * @return возвращает значение поля field
+     */
+    public TimeField getField() {
+        return field;
+    }
+
+    /**
+     * Функция получения значения поля from
+     * @return возвращает значение поля from
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * Функция получения значения поля to
+     * @return возвращает значение поля to
+     */
+    public long getTo() {
+        return to;
+    }
+
+    /**
+     * Функция получения значения поля descending
+     * @return возвращает значение поля descending
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Функция получения значения поля offset
+     * @return возвращает значение поля offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Функция получения значения поля limit
+     * @return возвращает значение поля limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return "DateRangeCommand{" +
+                "field=" + field +
+                ", from=" + from +
+                ", to=" + to +
+                ", descending=" + descending +
+                ", offset=" + offset +
+                ", limit=" + limit +
+                '}';
+    }
+}
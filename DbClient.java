@@ -14,10 +14,20 @@ import java.util.Scanner;
 /**
  * Класс клиентского приложения
  */
-public class DbClient implements AutoCloseable {
+public class DbClient implements MoviesClient {
 
     private final SocketChannel channel;
 
+    private final String host;
+
+    private final int port;
+
+    private volatile boolean subscribed = false;
+
+    private NearCache nearCache;
+
+    private DbClient invalidations;
+
     /**
      * Конструктор открывающий TCP соединение
      * @param host адрес хоста
@@ -25,6 +35,8 @@ public class DbClient implements AutoCloseable {
      * @throws IOException
      */
     public DbClient(String host, int port) throws IOException {
+        this.host = host;
+        this.port = port;
         InetSocketAddress addr = new InetSocketAddress(host, port);
         channel = SocketChannel.open(addr);
         System.out.println(channel.socket().getLocalPort());
@@ -34,10 +46,64 @@ public class DbClient implements AutoCloseable {
      * Закрытие TCP соединения
      * @throws IOException
      */
+    @Override
     public void close() throws IOException {
+        subscribed = false;
+        if (invalidations != null) {
+            invalidations.close();
+        }
         channel.close();
     }
 
+    /**
+     * Включение кэша фильмов на стороне клиента. Команды FindById и FindByName обслуживаются
+     * из кэша, а кэш сбрасывается событиями изменения, которые сервер передает по отдельному
+     * соединению, и изменениями, выполненными через этого клиента, поэтому клиент всегда
+     * видит свои изменения, а чужие - после получения события
+     * @param capacity наибольшее количество фильмов в кэше
+     * @return кэш для получения статистики
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public NearCache enableNearCache(int capacity) throws IOException, ClassNotFoundException {
+        if (nearCache != null) {
+            return nearCache;
+        }
+        NearCache cache = new NearCache(capacity);
+        DbClient channel = new DbClient(host, port);
+        try {
+            channel.subscribe(new SubscribeCommand(null, null, true), new SubscriptionListener() {
+                @Override
+                public void onEvent(ChangeEvent event) {
+                    if (event.getType() == ChangeEvent.Type.RESYNC) {
+                        cache.clear();
+                    } else {
+                        cache.invalidate(event.getId());
+                    }
+                }
+
+                @Override
+                public void onClosed(Exception cause) {
+                    cache.close();
+                }
+            });
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        invalidations = channel;
+        nearCache = cache;
+        return cache;
+    }
+
+    /**
+     * Функция получения кэша фильмов на стороне клиента
+     * @return кэш или null, если кэш не включен
+     */
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
     /**
      * Метод обработки команд
      * @param command команда
@@ -45,7 +111,51 @@ public class DbClient implements AutoCloseable {
      * @throws IOException
      * @throws ClassNotFoundException
      */
+    @Override
     public CommandResult exec(MovieCommand command) throws IOException, ClassNotFoundException {
+        if (subscribed) {
+            throw new IllegalStateException("Connection is subscribed to changes");
+        }
+        NearCache cache = nearCache;
+        if (cache == null) {
+            return send(command);
+        }
+        if (command instanceof FindByIdCommand || command instanceof FindByNameCommand) {
+            Movie movie = command instanceof FindByIdCommand
+                    ? (((FindByIdCommand) command).getId() != null ? cache.get(((FindByIdCommand) command).getId()) : null)
+                    : cache.get(((FindByNameCommand) command).getKey());
+            if (movie != null) {
+                return new CommandResultWithObject(movie);
+            }
+            long epoch = cache.epoch();
+            CommandResult result = send(command);
+            if (result.getType() == CommandResult.Type.SUCCESS) {
+                cache.put((Movie) ((CommandResultWithObject) result).getObject(), epoch);
+            }
+            return result;
+        }
+        CommandResult result = send(command);
+        if (command instanceof UpdateCommand) {
+            cache.invalidate(((UpdateCommand) command).getId());
+        } else if (command instanceof RemoveCommand) {
+            cache.invalidate(((RemoveCommand) command).getKey());
+        } else if (command instanceof ReplaceIfGreaterCommand) {
+            cache.invalidate(((ReplaceIfGreaterCommand) command).getKey());
+        } else if (command instanceof InsertCommand) {
+            cache.invalidate(((InsertCommand) command).getMovie().getName());
+        } else if (command instanceof ClearCommand || command instanceof RemoveLowerCommand
+                || command instanceof RemoveLowerKeyCommand) {
+            cache.clear();
+        }
+        return result;
+    }
+
+    /**
+     * передать команду серверу и получить ответ
+     * @param command команда
+     * @return результат исполнения
+     */
+    private CommandResult send(MovieCommand command) throws IOException, ClassNotFoundException {
         try {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             ObjectOutputStream oos = new ObjectOutputStream(baos);
@@ -61,10 +171,56 @@ public class DbClient implements AutoCloseable {
     }
 
     /**
-     * метод запуска соединения
+     * Метод подписки на события изменения коллекции. После подписки соединение
+     * служит только для получения событий, которые передаются получателю отдельным потоком,
+     * подписка завершается закрытием клиента
+     * @param command условие подписки
+     * @param listener получатель событий
+     * @return версия коллекции на момент подписки, следующие события имеют большие версии
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public long subscribe(SubscribeCommand command, SubscriptionListener listener) throws IOException, ClassNotFoundException {
+        CommandResult result = exec(command);
+        if (result.getType() != CommandResult.Type.SUCCESS) {
+            throw new IOException(result.getError());
+        }
+        subscribed = true;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(channel.socket().getInputStream()));
+        Thread thread = new Thread(() -> {
+            Exception cause = null;
+            try {
+                while (true) {
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                    listener.onEvent((ChangeEvent) ois.readObject());
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                if (subscribed) {
+                    cause = e;
+                }
+            }
+            listener.onClosed(cause);
+        }, "movies-subscription");
+        thread.setDaemon(true);
+        thread.start();
+        return (Long) ((CommandResultWithObject) result).getObject();
+    }
+
+    /**
+     * метод запуска соединения. Свойство movies.nodes=host:port,host:port,... подключает
+     * клиента к коллекции, распределенной между перечисленными серверами, вместо одного сервера,
+     * свойство movies.near.cache задает размер кэша фильмов на стороне клиента (по умолчанию кэш выключен)
      * @param args первый имя хоста второй порт
      */
     public static void main(String[] args)  {
+        String nodes = System.getProperty("movies.nodes");
+        int nearCacheSize = Integer.getInteger("movies.near.cache", 0);
+        if (nodes != null && !nodes.isEmpty()) {
+            runSharded(nodes);
+            return;
+        }
 
         if (args.length < 2) {
             System.err.println("Usage: Lab6Client host port");
@@ -88,12 +244,15 @@ public class DbClient implements AutoCloseable {
             try (DbClient client = new DbClient(host, port)) {
                 System.out.println("Connected to " + host + ":" + port);
                 testCommands(client);
+                if (nearCacheSize > 0) {
+                    client.enableNearCache(nearCacheSize);
+                }
                 QueryProcessor processor = new QueryProcessor(client);
                 while (!need_exit) {
                     System.out.print("movie>> ");
                     need_exit = processor.process(scanner);
                 }
-            } catch (IOException e) {
+            } catch (IOException | ClassNotFoundException e) {
                 System.err.println("Ошибка подключения к серверу " + host + ":" + port + " => " + e.getMessage());
                 String answer = "";
                 while (true) {
@@ -112,6 +271,26 @@ public class DbClient implements AutoCloseable {
     }
 
 
+    /**
+     * работа с коллекцией, распределенной между несколькими серверами
+     * @param nodes адреса серверов через запятую
+     */
+    private static void runSharded(String nodes) {
+        Scanner scanner = new Scanner(System.in);
+        System.out.println("Connecting to " + nodes);
+        try (ShardedDbClient client = new ShardedDbClient(nodes)) {
+            System.out.println("Connected to " + client.getNodeCount() + " nodes");
+            QueryProcessor processor = new QueryProcessor(client);
+            boolean need_exit = false;
+            while (!need_exit) {
+                System.out.print("movie>> ");
+                need_exit = processor.process(scanner);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ошибка подключения к серверам " + nodes + " => " + e.getMessage());
+        }
+    }
+
     private static Movie createMovie() {
         Movie test = new Movie();
         test.setId((long) (2 + 1));
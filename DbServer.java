@@ -18,6 +18,7 @@ import java.nio.channels.spi.SelectorProvider;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -34,13 +35,21 @@ public class DbServer {
 
     private final static int DEFAULT_PORT = 9090;
 
+    private final static long RESPONSE_CACHE_SIZE = 16 * 1024 * 1024;
+
     private InetAddress hostAddress = null;
 
     private int port;
 
-    private MoviesDB moviesDB;
+    private MoviesStorage moviesDB;
+
+    private final ResponseCache responseCache = new ResponseCache(RESPONSE_CACHE_SIZE);
+
+    private final CommandStats stats = new CommandStats();
 
-    public DbServer(MoviesDB db) throws IOException {
+    private final Follower follower;
+
+    public DbServer(MoviesStorage db) throws IOException {
         this(DEFAULT_PORT, db);
     }
 
@@ -50,8 +59,20 @@ public class DbServer {
      * @param db база данных
      * @throws IOException
      */
-    public DbServer(int port, MoviesDB db) throws IOException {
+    public DbServer(int port, MoviesStorage db) throws IOException {
+        this(port, db, null);
+    }
+
+    /**
+     * Конструктор создающий сервер
+     * @param port порт
+     * @param db база данных
+     * @param follower копия коллекции основного сервера или null для основного сервера
+     * @throws IOException
+     */
+    public DbServer(int port, MoviesStorage db, Follower follower) throws IOException {
         this.moviesDB = db;
+        this.follower = follower;
         this.port = port;
         selector = SelectorProvider.provider().openSelector();
 
@@ -66,7 +87,7 @@ public class DbServer {
     /**
      * главный цикл сервера ,который принимает подключение и команды
      */
-    private void loop() {
+    void loop() {
             while (true) {
             try {
                 selector.select();
@@ -88,6 +109,7 @@ public class DbServer {
 //                        write(key);
                     }
                 }
+                flushSubscriptions();
             } catch (Exception e) {
                 logger.error("Main loop error", e);
                 System.exit(1);
@@ -107,8 +129,9 @@ public class DbServer {
         socketChannel.configureBlocking(false);
         socketChannel.register(selector, SelectionKey.OP_READ);
 
-        workers.put(socketChannel, new DbWorker(socketChannel, moviesDB));
+        workers.put(socketChannel, new DbWorker(socketChannel, moviesDB, responseCache, selector::wakeup, follower, stats));
 
+        ConnectionEvent.emit("accept", socketChannel.socket().getRemoteSocketAddress(), workers.size());
         logger.info("Client is connected (clients = " + workers.size() + ")");
     }
 
@@ -123,17 +146,66 @@ public class DbServer {
 
         if(worker != null) {
             if(worker.read() < 0) {
-                key.channel().close();
-                key.cancel();
-                workers.remove(socketChannel);
-                logger.info("Client is disconnected (clients = " + workers.size() + ")");
+                disconnect(key);
             }
         }
 
     }
 
     /**
-     * Главный метод сервера
+     * Метод закрытия соединения с клиентом
+     * @param key ключ селектора
+     * @throws IOException
+     */
+    private void disconnect(SelectionKey key) throws IOException {
+        SocketChannel socketChannel = (SocketChannel) key.channel();
+        Object remoteAddress = socketChannel.socket().getRemoteSocketAddress();
+        socketChannel.close();
+        key.cancel();
+        DbWorker worker = workers.remove(socketChannel);
+        if(worker != null) {
+            worker.close();
+        }
+        ConnectionEvent.emit("close", remoteAddress, workers.size());
+        logger.info("Client is disconnected (clients = " + workers.size() + ")");
+        logger.info(responseCache.toString());
+    }
+
+    /**
+     * Метод отправки событий подписчикам. Пока подписчику не отправлено всё,
+     * селектор ждет готовности его канала к записи, остальные соединения при этом не блокируются
+     * @throws IOException
+     */
+    private void flushSubscriptions() throws IOException {
+        for (DbWorker worker : new ArrayList<DbWorker>(workers.values())) {
+            if (!worker.isSubscribed()) {
+                continue;
+            }
+            SelectionKey key = worker.socketChannel.keyFor(selector);
+            if (key == null || !key.isValid()) {
+                continue;
+            }
+            try {
+                boolean done = worker.flush();
+                key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                logger.warn("Subscriber write error: " + e.getMessage());
+                disconnect(key);
+            }
+        }
+    }
+
+    /**
+     * Главный метод сервера.
+     * Свойство movies.shards задает количество частей коллекции (по умолчанию 1): при первом запуске
+     * с несколькими частями коллекция из файла базы данных раскладывается по файлам частей, после этого
+     * сервер без свойства movies.shards не запускается,
+     * свойство movies.columnar включает поколоночное представление для просмотра коллекции,
+     * свойство movies.storage=offheap переносит записи фильмов из кучи в прямые буферы
+     * размером movies.arena.mb мегабайт, свойство movies.grid.cell задает сторону ячейки
+     * пространственного индекса (по умолчанию 10), свойство movies.follow=host:port запускает
+     * сервер-последователь, который поддерживает копию коллекции указанного сервера и выполняет только чтение,
+     * свойство movies.node задает номер сервера среди серверов, между которыми клиент распределяет коллекцию
      * @param args Аргументы путь к файлу базы данных, порт сервера
      */
     public static void main(String[] args) {
@@ -169,9 +241,19 @@ public class DbServer {
         }
 
         try {
-            MoviesDB db = new MoviesDB(path);
-            DbServer server = new DbServer(port, db);
-            logger.info("Server started");
+            int shards = Integer.getInteger("movies.shards", 1);
+            if (shards <= 1 && ShardedMoviesDB.hasShardFiles(path)) {
+                logger.error("Server error: коллекция " + path + " хранится по частям в файлах " + path.getFileName()
+                        + ".0, ... Запустите сервер с -Dmovies.shards=<количество частей>");
+                return;
+            }
+            MoviesStorage db = shards > 1 ? new ShardedMoviesDB(path, shards) : new MoviesDB(path);
+            Follower follower = Follower.fromProperties(db);
+            DbServer server = new DbServer(port, db, follower);
+            if (follower != null) {
+                follower.start();
+            }
+            logger.info("Server started" + (follower != null ? " as " + follower : ""));
             server.loop();
             logger.info("Server stopped");
             db.save();
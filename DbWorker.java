@@ -2,7 +2,7 @@ package org.dima.server;
 
 import org.dima.commands.*;
 import org.dima.movies.Movie;
-import org.dima.tools.ObjectSizeComparator;
+import org.dima.movies.MoviesDbInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +12,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -26,16 +27,54 @@ public class DbWorker {
 
     SocketChannel socketChannel;
 
-    private MoviesDB moviesDB;
+    private MoviesStorage moviesDB;
+
+    private ResponseCache responseCache;
+
+    private final Runnable wakeup;
+
+    private final Follower follower;
+
+    private Subscription subscription = null;
+
+    private ByteBuffer pendingEvent = null;
+
+    private final CommandStats stats;
+
+    /**
+     * время записи коллекции в файл при выполнении текущей команды
+     */
+    private long persistNanos = 0;
 
     /**
      * Конструктор обработчика команд
      * @param channel серверный канал
      * @param db база данных
+     * @param cache кэш ответов на команды чтения
      * @throws IOException
      */
-    public DbWorker(SocketChannel channel, MoviesDB db) throws IOException {
+    public DbWorker(SocketChannel channel, MoviesStorage db, ResponseCache cache) throws IOException {
+        this(channel, db, cache, () -> {}, null, new CommandStats());
+    }
+
+    /**
+     * Конструктор обработчика команд
+     * @param channel серверный канал
+     * @param db база данных
+     * @param cache кэш ответов на команды чтения
+     * @param wakeup оповещение потока сервера о новых событиях для подписчика
+     * @param follower копия коллекции основного сервера или null на основном сервере.
+     *                 На последователе выполняются только команды, не изменяющие коллекцию
+     * @param stats статистика обработки команд сервером
+     * @throws IOException
+     */
+    public DbWorker(SocketChannel channel, MoviesStorage db, ResponseCache cache, Runnable wakeup, Follower follower,
+                    CommandStats stats) throws IOException {
         moviesDB = db;
+        this.stats = stats;
+        responseCache = cache;
+        this.wakeup = wakeup;
+        this.follower = follower;
         socketChannel = channel;
         socketChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
         socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
@@ -52,10 +91,12 @@ public class DbWorker {
         // Attempt to read off the channel
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         int numRead;
+        long received = 0;
         try {
             while((numRead = socketChannel.read(readBuffer)) > 0) {
                 baos.write(readBuffer.array());
                 readBuffer.clear();
+                received += numRead;
             }
          } catch (IOException e) {
             logger.warn("Client Forceful shutdown");
@@ -67,27 +108,61 @@ public class DbWorker {
             return -1;
         }
 
+        if (subscription != null) {
+            logger.warn("Command on subscribed connection is ignored");
+            return numRead;
+        }
+
+        stats.received(received);
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        event.requestSize = received;
         try {
+            long start = System.nanoTime();
             ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
             ObjectInputStream ois = new ObjectInputStream(bais);
             Object object = ois.readObject();
             if(!(object instanceof MovieCommand)) {
                 throw new ClassNotFoundException("Invalid command");
             }
+            MovieCommand command = (MovieCommand) object;
+            long decoded = System.nanoTime();
+            stats.record(command, CommandStats.Phase.DECODE, decoded - start);
             logger.info("Receive command: " + object + " (size=" + bais.available() + ")");
-            CommandResult result = call((MovieCommand) object);
-            if(result != null) {
-                ByteArrayOutputStream res_baos = new ByteArrayOutputStream();
-                ObjectOutputStream res_oos = new ObjectOutputStream(res_baos);
-                res_oos.writeObject(result);
-                ByteBuffer writeBuffer = ByteBuffer.allocate(res_baos.size());
-                writeBuffer.put(res_baos.toByteArray());
-                writeBuffer.flip();
-                int num_bytes = 0;
-                while(writeBuffer.hasRemaining()) {
-                    num_bytes += socketChannel.write(writeBuffer);
+            String cacheKey = follower != null && command instanceof InfoCommand ? null : getCacheKey(command);
+            long version = moviesDB.getVersion();
+            long lookup = System.nanoTime();
+            byte[] answer = cacheKey != null ? responseCache.get(cacheKey, version) : null;
+            if(answer != null) {
+                long found = System.nanoTime();
+                stats.record(command, CommandStats.Phase.EXECUTE, found - lookup);
+                int num_bytes = write(answer);
+                stats.record(command, CommandStats.Phase.WRITE, System.nanoTime() - found);
+                stats.sent(null, num_bytes);
+                event.commit(command, "CACHED", num_bytes);
+                logger.info("Send cached answer (size=" + num_bytes + ")");
+            } else {
+                persistNanos = 0;
+                long executing = System.nanoTime();
+                CommandResult result = call(command);
+                long executed = System.nanoTime();
+                stats.record(command, CommandStats.Phase.EXECUTE, executed - executing - persistNanos);
+                if(persistNanos > 0) {
+                    stats.record(command, CommandStats.Phase.PERSIST, persistNanos);
+                }
+                if(result != null) {
+                    answer = encode(result);
+                    long encoded = System.nanoTime();
+                    stats.record(command, CommandStats.Phase.ENCODE, encoded - executed);
+                    if(cacheKey != null && result.getType() != CommandResult.Type.ERROR) {
+                        responseCache.put(cacheKey, version, answer);
+                    }
+                    int num_bytes = write(answer);
+                    stats.record(command, CommandStats.Phase.WRITE, System.nanoTime() - encoded);
+                    stats.sent(result.getType(), num_bytes);
+                    event.commit(command, result.getType().name(), num_bytes);
+                    logger.info("Send answer: " + result.getType() + " (size=" + num_bytes + ")");
                 }
-                logger.info("Send answer: " + result.getType() + " (size=" + num_bytes + ")");
             }
         } catch (IOException | ClassNotFoundException e) {
             logger.error("Reading error", e);
@@ -96,20 +171,208 @@ public class DbWorker {
         return numRead;
     }
 
+    /**
+     * Метод сериализации ответа
+     * @param result результат исполнения команды
+     * @return байты ответа
+     * @throws IOException
+     */
+    private byte[] encode(CommandResult result) throws IOException {
+        ByteArrayOutputStream res_baos = new ByteArrayOutputStream();
+        ObjectOutputStream res_oos = new ObjectOutputStream(res_baos);
+        res_oos.writeObject(result);
+        res_oos.close();
+        return res_baos.toByteArray();
+    }
+
+    /**
+     * Метод отправки ответа в канал
+     * @param answer байты ответа
+     * @return колличество отправленных байт
+     * @throws IOException
+     */
+    private int write(byte[] answer) throws IOException {
+        ByteBuffer writeBuffer = ByteBuffer.wrap(answer);
+        int num_bytes = 0;
+        while(writeBuffer.hasRemaining()) {
+            num_bytes += socketChannel.write(writeBuffer);
+        }
+        return num_bytes;
+    }
+
+    /**
+     * Метод записи коллекции в файл с учетом времени записи в статистике текущей команды
+     * @throws Exception
+     */
+    private void save() throws Exception {
+        long start = System.nanoTime();
+        try {
+            moviesDB.save();
+        } finally {
+            persistNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Метод проверки, что соединение подписано на события изменения коллекции
+     * @return True-соединение подписано
+     */
+    public boolean isSubscribed() {
+        return subscription != null;
+    }
+
+    /**
+     * Метод отправки накопленных событий подписчику без блокировки: каждое событие
+     * отправляется длиной и сериализованным объектом. Если канал не принимает данные,
+     * остаток события отправляется при следующем вызове
+     * @return True-все события отправлены, False-канал заполнен
+     * @throws IOException
+     */
+    public boolean flush() throws IOException {
+        while (true) {
+            if (pendingEvent != null) {
+                socketChannel.write(pendingEvent);
+                if (pendingEvent.hasRemaining()) {
+                    return false;
+                }
+                pendingEvent = null;
+            }
+            ChangeEvent event = subscription != null ? subscription.poll() : null;
+            if (event == null) {
+                return true;
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(event);
+            oos.close();
+            pendingEvent = ByteBuffer.allocate(4 + baos.size());
+            pendingEvent.putInt(baos.size()).put(baos.toByteArray()).flip();
+        }
+    }
+
+    /**
+     * Метод освобождения обработчика после закрытия соединения
+     */
+    public void close() {
+        if (subscription != null) {
+            moviesDB.removeChangeListener(subscription);
+            logger.info("Subscription closed (dropped events = " + subscription.getDropped() + ")");
+            subscription = null;
+        }
+    }
+
+    /**
+     * Метод получения ключа кэша ответов для команд, которые не изменяют коллекцию
+     * @param command команда
+     * @return ключ кэша или null если ответ на команду не кэшируется
+     */
+    private static String getCacheKey(MovieCommand command) {
+        if(command instanceof ShowCommand) {
+            return "SHOW";
+        } else if(command instanceof InfoCommand) {
+            return "INFO";
+        } else if(command instanceof MaxByNameCommand) {
+            return "MAX_BY_NAME";
+        } else if(command instanceof FindByNameCommand) {
+            return "FIND_BY_NAME:" + ((FindByNameCommand) command).getKey();
+        } else if(command instanceof FindByIdCommand) {
+            return "FIND_BY_ID:" + ((FindByIdCommand) command).getId();
+        } else if(command instanceof FilterContainsNameCommand) {
+            return "FILTER_CONTAINS_NAME:" + ((FilterContainsNameCommand) command).getKey();
+        } else if(command instanceof PrintFieldAscendingGenreCommand) {
+            return "PRINT_FIELD_ASCENDING_GENRE:" + ((PrintFieldAscendingGenreCommand) command).getGenre();
+        } else if(command instanceof QueryCommand) {
+            QueryCommand query = (QueryCommand) command;
+            return "QUERY:" + query.getSortBy() + ":" + query.isDescending() + ":" + query.getLimit()
+                    + ":" + getKey(query.getFilter());
+        } else if(command instanceof AggregateCommand) {
+            AggregateCommand aggregate = (AggregateCommand) command;
+            return "AGGREGATE:" + aggregate.getGroupBy() + ":" + aggregate.getMeasures()
+                    + ":" + getKey(aggregate.getFilter());
+        } else if(command instanceof TopKCommand) {
+            TopKCommand topK = (TopKCommand) command;
+            return "TOP_K:" + topK.getField() + ":" + topK.getK() + ":" + topK.isDescending()
+                    + ":" + getKey(topK.getFilter());
+        } else if(command instanceof DateRangeCommand) {
+            return "DATE_RANGE:" + command;
+        } else if(command instanceof FindByDirectorCommand) {
+            return "FIND_BY_DIRECTOR:" + command;
+        } else if(command instanceof CountByDirectorCommand) {
+            return "COUNT_BY_DIRECTOR:" + command;
+        } else if(command instanceof WithinBoxCommand) {
+            return "WITHIN_BOX:" + command;
+        } else if(command instanceof NearestCommand) {
+            return "NEAREST:" + command;
+        }
+        return null;
+    }
+
+    /**
+     * Метод получения ключа кэша для условия отбора
+     * @param filter условие или null
+     * @return однозначная запись условия
+     */
+    private static String getKey(MoviePredicate filter) {
+        return filter != null ? filter.toKey() : "-";
+    }
+
+    /**
+     * Метод управления записью Java Flight Recorder
+     * @param command команда
+     * @return состояние записи или путь к записанному файлу
+     */
+    private CommandResult record(RecordingCommand command) {
+        Object client = socketChannel.socket().getRemoteSocketAddress();
+        try {
+            switch (command.getAction()) {
+                case START:
+                    return new CommandResultWithObject(FlightRecording.start(command.getArgument(), client));
+                case STOP:
+                    return new CommandResultWithObject(FlightRecording.stop(client));
+                case DUMP:
+                    return new CommandResultWithObject(FlightRecording.dump(command.getArgument(), client));
+                default:
+                    return new CommandResultWithObject(FlightRecording.status());
+            }
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return new CommandResultWithObject(CommandResult.Type.WARNING, e.getMessage());
+        } catch (Exception e) {
+            return new CommandResultWithObject(CommandResult.Type.ERROR, "Recording error: " + e.getMessage());
+        }
+    }
+
     /**
      * Метод вызова команды базы данных
      * @param command команда
      * @return результат исполнения команды
      */
     private CommandResult call(MovieCommand command) {
-        if(command instanceof TestCommand) {
+        if(follower != null && getCacheKey(command) == null
+                && !(command instanceof SubscribeCommand) && !(command instanceof SnapshotCommand)
+                && !(command instanceof StatsCommand) && !(command instanceof RecordingCommand)) {
+            return new CommandResult(CommandResult.Type.ERROR, "Server is a read-only follower, send changes to the primary");
+        }
+        if(command instanceof SnapshotCommand) {
+            return new CommandResultWithObject(moviesDB.snapshot());
+        } else if(command instanceof SubscribeCommand) {
+            subscription = new Subscription((SubscribeCommand) command, moviesDB::getVersion, wakeup);
+            moviesDB.addChangeListener(subscription);
+            return new CommandResultWithObject(moviesDB.getVersion());
+        } else if(command instanceof StatsCommand) {
+            return new CommandResultWithObject(stats.snapshot());
+        } else if(command instanceof RecordingCommand) {
+            return record((RecordingCommand) command);
+        } else if(command instanceof TestCommand) {
             return new CommandResult();
         } else if(command instanceof ShowCommand) {
-            ArrayList<Movie> movies  = new ArrayList<Movie>(moviesDB.getMovies().values());
-            movies.sort(new ObjectSizeComparator());
+            ArrayList<Movie> movies  = new ArrayList<Movie>(moviesDB.getMoviesBySize());
             return new CommandResultWithObject(movies);
         } else if(command instanceof InfoCommand) {
-            return new CommandResultWithObject(moviesDB.getInformation());
+            MoviesDbInformation information = moviesDB.getInformation();
+            if(follower != null) {
+                information.setReplication(follower.toString());
+            }
+            return new CommandResultWithObject(information);
         } else if(command instanceof FindByNameCommand) {
             Long id  = moviesDB.findByName(((FindByNameCommand) command).getKey());
             if(id == null) {
@@ -127,8 +390,8 @@ public class DbWorker {
             }
         } else if(command instanceof ClearCommand) {
             try {
-                moviesDB.getMovies().clear();
-                moviesDB.save();
+                moviesDB.clear();
+                save();
                 return new CommandResult();
             } catch (Exception e) {
                 return new CommandResult(CommandResult.Type.ERROR, e.getMessage());
@@ -136,34 +399,46 @@ public class DbWorker {
         } else if(command instanceof InsertCommand) {
             try {
                 moviesDB.insert(((InsertCommand) command).getMovie());
-                moviesDB.save();
+                save();
                 return new CommandResult();
             } catch (Exception e) {
                 return new CommandResult(CommandResult.Type.ERROR, e.getMessage());
             }
         } else if(command instanceof UpdateCommand) {
+            UpdateCommand update = (UpdateCommand) command;
             try {
-                moviesDB.update(((UpdateCommand) command).getId(), ((UpdateCommand) command).getMovie());
-                moviesDB.save();
-                return new CommandResult();
+                if(update.getExpectedVersion() != null) {
+                    moviesDB.update(update.getId(), update.getMovie(), update.getExpectedVersion());
+                } else {
+                    moviesDB.update(update.getId(), update.getMovie());
+                }
+                save();
+                return new CommandResultWithObject(update.getMovie().getVersion());
+            } catch (VersionConflictException e) {
+                return new CommandResult(CommandResult.Type.CONFLICT, e.getMessage());
             } catch (Exception e) {
                 return new CommandResult(CommandResult.Type.ERROR, e.getMessage());
             }
         } else if(command instanceof RemoveCommand) {
+            RemoveCommand remove = (RemoveCommand) command;
             try {
-                if(moviesDB.remove(((RemoveCommand) command).getKey())) {
-                    moviesDB.save();
+                if(remove.getExpectedVersion() != null
+                        ? moviesDB.remove(remove.getKey(), remove.getExpectedVersion())
+                        : moviesDB.remove(remove.getKey())) {
+                    save();
                     return new CommandResult();
                 } else {
                     return new CommandResult(CommandResult.Type.WARNING, "There is no Record with key " + ((RemoveCommand) command).getKey());
                 }
+            } catch (VersionConflictException e) {
+                return new CommandResult(CommandResult.Type.CONFLICT, e.getMessage());
             } catch (Exception e) {
                 return new CommandResult(CommandResult.Type.ERROR, e.getMessage());
             }
         } else if(command instanceof RemoveLowerKeyCommand) {
             try {
                 if(moviesDB.removeLowerKey(((RemoveLowerKeyCommand) command).getKey()) > 0) {
-                    moviesDB.save();
+                    save();
                     return new CommandResult();
                 } else {
                     return new CommandResult(CommandResult.Type.WARNING, "There is no Records with key lower then " + ((RemoveLowerKeyCommand) command).getKey());
@@ -173,16 +448,16 @@ public class DbWorker {
             }
         } else if(command instanceof FilterContainsNameCommand) {
             ArrayList<Movie> movies  = new ArrayList<Movie>(moviesDB.filterByName(((FilterContainsNameCommand) command).getKey()));
-            movies.sort(new ObjectSizeComparator());
+            movies.sort(moviesDB.sizeComparator());
             return new CommandResultWithObject(movies);
         } else if(command instanceof PrintFieldAscendingGenreCommand) {
             ArrayList<Movie> movies  = new ArrayList<Movie>(moviesDB.filterByGenre(((PrintFieldAscendingGenreCommand) command).getGenre()));
-            movies.sort(new ObjectSizeComparator());
+            movies.sort(moviesDB.sizeComparator());
             return new CommandResultWithObject(movies);
         } else if(command instanceof RemoveLowerCommand) {
             try {
                 if(moviesDB.removeLower(((RemoveLowerCommand) command).getMovie()) > 0) {
-                    moviesDB.save();
+                    save();
                     return new CommandResult();
                 } else {
                     return new CommandResult(CommandResult.Type.WARNING, "There is no Records with key lower then " + ((RemoveLowerCommand) command).getMovie());
@@ -191,17 +466,99 @@ public class DbWorker {
                 return new CommandResult(CommandResult.Type.ERROR, e.getMessage());
             }
         } else if(command instanceof ReplaceIfGreaterCommand) {
+            ReplaceIfGreaterCommand replace = (ReplaceIfGreaterCommand) command;
             try {
-                if(moviesDB.replaceIfGreater(((ReplaceIfGreaterCommand) command).getKey(),((ReplaceIfGreaterCommand) command).getMovie())) {
-                    moviesDB.save();
+                if(replace.getExpectedVersion() != null
+                        ? moviesDB.replaceIfGreater(replace.getKey(), replace.getMovie(), replace.getExpectedVersion())
+                        : moviesDB.replaceIfGreater(replace.getKey(), replace.getMovie())) {
+                    save();
                     return new CommandResult();
                 } else {
                     return new CommandResult(CommandResult.Type.WARNING, "There is no Records with key greater then " + ((ReplaceIfGreaterCommand) command).getKey());
                 }
+            } catch (VersionConflictException e) {
+                return new CommandResult(CommandResult.Type.CONFLICT, e.getMessage());
             } catch (Exception e) {
                 return new CommandResult(CommandResult.Type.ERROR, e.getMessage());
             }
 
+        } else if(command instanceof QueryCommand) {
+            QueryCommand query = (QueryCommand) command;
+            try {
+                Comparator<Movie> order = query.getSortBy() != null
+                        ? query.getSortBy().comparator(query.isDescending())
+                        : (query.isDescending() ? Comparator.<Movie>reverseOrder() : Comparator.<Movie>naturalOrder());
+                ArrayList<Movie> movies = new ArrayList<Movie>(moviesDB.query(query.getFilter(), order, query.getLimit()));
+                return new CommandResultWithObject(movies);
+            } catch (RuntimeException e) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid query: " + e.getMessage());
+            }
+        } else if(command instanceof AggregateCommand) {
+            AggregateCommand aggregate = (AggregateCommand) command;
+            try {
+                return new CommandResultWithObject(moviesDB.aggregate(aggregate.getFilter(), aggregate.getGroupBy(), aggregate.getMeasures()));
+            } catch (RuntimeException e) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid aggregate: " + e.getMessage());
+            }
+        } else if(command instanceof TopKCommand) {
+            TopKCommand topK = (TopKCommand) command;
+            try {
+                ArrayList<Movie> movies = new ArrayList<Movie>(moviesDB.topK(topK.getFilter(), topK.getField(), topK.isDescending(), topK.getK()));
+                return new CommandResultWithObject(movies);
+            } catch (RuntimeException e) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid top: " + e.getMessage());
+            }
+        } else if(command instanceof DateRangeCommand) {
+            DateRangeCommand range = (DateRangeCommand) command;
+            if(!range.validate()) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid date range: field must be set, offset and limit not negative");
+            }
+            try {
+                ArrayList<Movie> movies = new ArrayList<Movie>(moviesDB.dateRange(range.getField(), range.getFrom(), range.getTo(),
+                        range.isDescending(), range.getOffset(), range.getLimit()));
+                return new CommandResultWithObject(movies);
+            } catch (RuntimeException e) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid date range: " + e.getMessage());
+            }
+        } else if(command instanceof FindByDirectorCommand) {
+            FindByDirectorCommand find = (FindByDirectorCommand) command;
+            if(!find.validate()) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid director: key must be set");
+            }
+            try {
+                ArrayList<Movie> movies = new ArrayList<Movie>(moviesDB.findByDirector(find.getKey(), find.isByName()));
+                return new CommandResultWithObject(movies);
+            } catch (RuntimeException e) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid director: " + e.getMessage());
+            }
+        } else if(command instanceof CountByDirectorCommand) {
+            try {
+                return new CommandResultWithObject(moviesDB.countByDirector(((CountByDirectorCommand) command).getName()));
+            } catch (RuntimeException e) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid director: " + e.getMessage());
+            }
+        } else if(command instanceof WithinBoxCommand) {
+            WithinBoxCommand box = (WithinBoxCommand) command;
+            if(!box.validate()) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid box: target must be set and bounds finite and ordered");
+            }
+            try {
+                ArrayList<Movie> movies = new ArrayList<Movie>(moviesDB.withinBox(box.getTarget(), box.getMinX(), box.getMinY(), box.getMaxX(), box.getMaxY()));
+                return new CommandResultWithObject(movies);
+            } catch (RuntimeException e) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid box: " + e.getMessage());
+            }
+        } else if(command instanceof NearestCommand) {
+            NearestCommand nearest = (NearestCommand) command;
+            if(!nearest.validate()) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid nearest: target must be set, point finite and k positive");
+            }
+            try {
+                ArrayList<Movie> movies = new ArrayList<Movie>(moviesDB.nearest(nearest.getTarget(), nearest.getX(), nearest.getY(), nearest.getK()));
+                return new CommandResultWithObject(movies);
+            } catch (RuntimeException e) {
+                return new CommandResultWithObject(CommandResult.Type.ERROR, "Invalid nearest: " + e.getMessage());
+            }
         } else if(command instanceof MaxByNameCommand) {
             Movie movie = moviesDB.maxByName();
             if(movie != null) {
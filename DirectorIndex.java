@@ -0,0 +1,179 @@
+package org.dima.server;
+
+import org.dima.movies.Person;
+import org.dima.tools.LongHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Индекс режиссеров: индентификаторы фильмов по номеру паспорта режиссера
+ * и по имени режиссера. Изменяет индекс только владелец под блокировкой записи коллекции,
+ * читатели копируют список фильмов режиссера без блокировки и повторяют копирование
+ * под блокировкой чтения списка, если список изменился во время копирования
+ */
+final class DirectorIndex {
+    private static final long[] EMPTY = new long[0];
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int INDEXED_SIZE = 32;
+
+    private final Map<String, Movies> byPassport = new ConcurrentHashMap<String, Movies>();
+    private final Map<String, Movies> byName = new ConcurrentHashMap<String, Movies>();
+
+    /**
+     * Фильмы режиссера в растущем массиве: вставка дописывает фильм в конец, удаление
+     * переносит последний фильм на место удаленного. У режиссеров с большим количеством
+     * фильмов положение фильма по индентификатору хранит таблица, которую читает
+     * и изменяет только владелец индекса
+     */
+    private static final class Movies {
+        final StampedLock lock = new StampedLock();
+        long[] ids = new long[INITIAL_CAPACITY];
+        volatile int size;
+        LongHashMap<Integer> positions;
+
+        void add(long id) {
+            long stamp = lock.writeLock();
+            try {
+                int n = size;
+                if (n == ids.length) {
+                    ids = Arrays.copyOf(ids, n * 2);
+                }
+                ids[n] = id;
+                if (positions != null) {
+                    positions.put(id, n);
+                } else if (n + 1 == INDEXED_SIZE) {
+                    positions = new LongHashMap<Integer>();
+                    for (int i = 0; i <= n; i++) {
+                        positions.put(ids[i], i);
+                    }
+                }
+                size = n + 1;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @return True-если фильм был в списке
+         */
+        boolean remove(long id) {
+            long stamp = lock.writeLock();
+            try {
+                int i = position(id);
+                if (i < 0) {
+                    return false;
+                }
+                int last = size - 1;
+                ids[i] = ids[last];
+                if (positions != null) {
+                    positions.remove(id);
+                    if (i < last) {
+                        positions.put(ids[i], i);
+                    }
+                }
+                size = last;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private int position(long id) {
+            if (positions != null) {
+                Integer position = positions.get(id);
+                return position != null ? position : -1;
+            }
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * скопировать список: без блокировки, если список не изменился во время копирования
+         * @return индентификаторы фильмов
+         */
+        long[] toArray() {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                long[] current = ids;
+                long[] result = Arrays.copyOf(current, Math.min(size, current.length));
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return Arrays.copyOf(ids, size);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * добавить фильм режиссера
+     * @param id индентификатор фильма
+     * @param director режиссер
+     */
+    void add(long id, Person director) {
+        byPassport.computeIfAbsent(director.getPassportID(), key -> new Movies()).add(id);
+        byName.computeIfAbsent(director.getName(), key -> new Movies()).add(id);
+    }
+
+    /**
+     * удалить фильм режиссера
+     * @param id индентификатор фильма
+     * @param director режиссер, с которым фильм был добавлен
+     */
+    void remove(long id, Person director) {
+        remove(byPassport, director.getPassportID(), id);
+        remove(byName, director.getName(), id);
+    }
+
+    private static void remove(Map<String, Movies> index, String key, long id) {
+        Movies movies = index.get(key);
+        if (movies != null && movies.remove(id) && movies.size == 0) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * фильмы режиссера по номеру паспорта
+     * @param passportID номер паспорта
+     * @return индентификаторы фильмов
+     */
+    long[] byPassport(String passportID) {
+        Movies movies = byPassport.get(passportID);
+        return movies != null ? movies.toArray() : EMPTY;
+    }
+
+    /**
+     * фильмы режиссеров с заданным именем
+     * @param name имя режиссера
+     * @return индентификаторы фильмов
+     */
+    long[] byName(String name) {
+        Movies movies = byName.get(name);
+        return movies != null ? movies.toArray() : EMPTY;
+    }
+
+    /**
+     * перебрать всех режиссеров
+     * @param consumer получатель номера паспорта и количества фильмов режиссера
+     */
+    void forEachPassport(BiConsumer<String, Integer> consumer) {
+        byPassport.forEach((passportID, movies) -> {
+            int size = movies.size;
+            if (size > 0) {
+                consumer.accept(passportID, size);
+            }
+        });
+    }
+}
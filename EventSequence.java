@@ -0,0 +1,28 @@
+package org.dima.server;
+
+/**
+ * Нумерация событий изменения коллекции. Коллекция публикует новую версию, назначает номера
+ * событиям и передает их получателям под монитором этого объекта, поэтому получатели видят
+ * события в порядке номеров, а снимок, открытый под тем же монитором, содержит изменения
+ * ровно тех событий, номера которых не больше {@link #current()}.
+ * Части разделенной коллекции используют одну общую нумерацию
+ */
+final class EventSequence {
+    private long last = 0;
+
+    /**
+     * назначить номер следующему событию. Вызывается под монитором нумерации
+     * @return номер события
+     */
+    synchronized long next() {
+        return ++last;
+    }
+
+    /**
+     * Функция получения номера последнего события
+     * @return номер события или 0, если событий не было
+     */
+    synchronized long current() {
+        return last;
+    }
+}
@@ -0,0 +1,58 @@
+package org.dima.commands;
+
+import org.dima.movies.CanValidate;
+
+/**
+ * Класс для сериализации в поток команды FindByDirector - получения фильмов режиссера
+ * по номеру паспорта или по имени
+ */
+public class FindByDirectorCommand extends MovieCommand implements CanValidate {
+    private final String key;
+    private final boolean byName;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param key номер паспорта или имя режиссера
+     * @param byName True-key является именем режиссера, False-номером паспорта
+     */
+    public FindByDirectorCommand(String key, boolean byName) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Director is not set");
+        }
+        this.key = key;
+        this.byName = byName;
+    }
+
+    /**
+     * Проверка параметров команды
+     * @return True-режиссер задан
+     */
+    @Override
+    public boolean validate() {
+        return key != null && !key.isEmpty();
+    }
+
+    /**
+     * Функция получения значения поля key
+     * @return возвращает значение поля key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Функция получения значения поля byName
+     * @return возвращает значение поля byName
+     */
+    public boolean isByName() {
+        return byName;
+    }
+
+    @Override
+    public String toString() {
+        return "FindByDirectorCommand{" +
+                "key='" + key + '\'' +
+                ", byName=" + byName +
+                '}';
+    }
+}
@@ -0,0 +1,117 @@
+package org.dima.server;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Управление записью Java Flight Recorder по команде клиента. Flight Recorder один на JVM,
+ * поэтому и запись одна на весь сервер. Данные записываются только в файлы .jfr в каталоге
+ * записей, который задает свойство movies.recordings.dir (по умолчанию каталог recordings);
+ * клиент передает только имя файла. Данные записи на диске ограничены по возрасту и размеру:
+ * свойства movies.recordings.max.age (минуты, по умолчанию 30) и movies.recordings.max.mb
+ * (мегабайты, по умолчанию 256), более старые данные удаляются, даже если запись не остановлена
+ */
+final class FlightRecording {
+    private final static Logger logger = LoggerFactory.getLogger(FlightRecording.class);
+
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*\\.jfr");
+
+    private static Recording recording = null;
+
+    private FlightRecording() {
+    }
+
+    /**
+     * начать запись
+     * @param settings имя настроек JFR (default или profile), null - default
+     * @param client адрес клиента, начавшего запись
+     * @return состояние записи
+     * @throws IOException
+     * @throws ParseException
+     */
+    static synchronized String start(String settings, Object client) throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("Recording is already running");
+        }
+        close();
+        recording = new Recording(Configuration.getConfiguration(settings != null ? settings : "default"));
+        recording.setName("movies");
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofMinutes(Long.getLong("movies.recordings.max.age", 30)));
+        recording.setMaxSize(Long.getLong("movies.recordings.max.mb", 256) * 1024 * 1024);
+        recording.start();
+        logger.info("Flight recording started by " + client + ": " + status());
+        return status();
+    }
+
+    /**
+     * остановить запись, накопленные данные остаются доступны для DUMP
+     * @param client адрес клиента, остановившего запись
+     * @return состояние записи
+     */
+    static synchronized String stop(Object client) {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            throw new IllegalStateException("Recording is not running");
+        }
+        recording.stop();
+        logger.info("Flight recording stopped by " + client + ": " + status());
+        return status();
+    }
+
+    /**
+     * записать накопленные данные в файл каталога записей
+     * @param file имя файла .jfr без каталогов
+     * @param client адрес клиента, запросившего запись в файл
+     * @return путь к записанному файлу
+     * @throws IOException
+     */
+    static synchronized String dump(String file, Object client) throws IOException {
+        if (recording == null) {
+            throw new IllegalStateException("Nothing was recorded");
+        }
+        if (file == null || !FILE_NAME.matcher(file).matches()) {
+            throw new IllegalArgumentException("Recording file must be a plain file name with .jfr extension");
+        }
+        Path directory = Paths.get(System.getProperty("movies.recordings.dir", "recordings")).toAbsolutePath().normalize();
+        Path path = directory.resolve(file).normalize();
+        if (!directory.equals(path.getParent())) {
+            throw new IllegalArgumentException("Recording file must be a plain file name with .jfr extension");
+        }
+        Files.createDirectories(directory);
+        recording.dump(path);
+        logger.info("Flight recording dumped to " + path + " by " + client);
+        return path.toString();
+    }
+
+    /**
+     * Функция получения состояния записи
+     * @return описание состояния
+     */
+    static synchronized String status() {
+        if (recording == null) {
+            return "no recording";
+        }
+        return "recording " + recording.getName() + " " + recording.getState()
+                + (recording.getStartTime() != null ? " since " + recording.getStartTime() : "")
+                + ", " + recording.getSize() + " bytes (max age " + recording.getMaxAge()
+                + ", max size " + recording.getMaxSize() + " bytes)";
+    }
+
+    private static void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.dima.server;
+
+import org.dima.client.DbClient;
+import org.dima.client.SubscriptionListener;
+import org.dima.commands.ChangeEvent;
+import org.dima.commands.CommandResult;
+import org.dima.commands.CommandResultWithObject;
+import org.dima.commands.SnapshotCommand;
+import org.dima.commands.SubscribeCommand;
+import org.dima.movies.CollectionSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Копия коллекции основного сервера на сервере-последователе.
+ * Последователь подписывается на события изменения основного сервера, затем заполняет
+ * коллекцию снимком основного сервера и применяет по порядку события новее снимка.
+ * Новизну события определяет его номер: одна версия основного сервера может содержать
+ * несколько изменений, а номера событий растут на 1 с каждым изменением.
+ * После события RESYNC коллекция заполняется снимком заново, после разрыва соединения -
+ * после переподключения. Адрес основного сервера задает свойство movies.follow=host:port
+ */
+public class Follower implements Runnable {
+    private final static Logger logger = LoggerFactory.getLogger(Follower.class);
+
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * метка закрытия подписки в очереди событий, сравнивается по ссылке
+     */
+    private static final ChangeEvent CLOSED = new ChangeEvent(ChangeEvent.Type.RESYNC, 0, null, -1, 0, 0);
+
+    private final String host;
+    private final int port;
+    private final MoviesStorage db;
+    private volatile boolean connected = false;
+    private volatile long appliedVersion = -1;
+    private volatile long appliedSequence = -1;
+    private volatile long primarySequence = -1;
+    private volatile long lagMillis = 0;
+
+    /**
+     * Конструктор последователя
+     * @param host адрес основного сервера
+     * @param port порт основного сервера
+     * @param db коллекция, в которой поддерживается копия
+     */
+    public Follower(String host, int port, MoviesStorage db) {
+        this.host = host;
+        this.port = port;
+        this.db = db;
+    }
+
+    /**
+     * создать последователя по свойству movies.follow
+     * @param db коллекция, в которой поддерживается копия
+     * @return последователь или null, если свойство не задано
+     * @throws IllegalArgumentException свойство задано не в виде host:port
+     */
+    public static Follower fromProperties(MoviesStorage db) throws IllegalArgumentException {
+        String primary = System.getProperty("movies.follow");
+        if (primary == null || primary.isEmpty()) {
+            return null;
+        }
+        int colon = primary.lastIndexOf(':');
+        try {
+            return new Follower(primary.substring(0, colon), Integer.parseInt(primary.substring(colon + 1)), db);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("movies.follow must be host:port: " + primary);
+        }
+    }
+
+    /**
+     * запустить поддержку копии в отдельном потоке
+     */
+    public void start() {
+        Thread thread = new Thread(this, "movies-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<ChangeEvent>();
+            try (DbClient subscription = new DbClient(host, port); DbClient commands = new DbClient(host, port)) {
+                subscription.subscribe(new SubscribeCommand(null, null), new SubscriptionListener() {
+                    @Override
+                    public void onEvent(ChangeEvent event) {
+                        primarySequence = Math.max(primarySequence, event.getSequence());
+                        events.add(event);
+                    }
+
+                    @Override
+                    public void onClosed(Exception cause) {
+                        events.add(CLOSED);
+                    }
+                });
+                bootstrap(commands);
+                connected = true;
+                ChangeEvent event;
+                while ((event = events.take()) != CLOSED) {
+                    if (event.getType() == ChangeEvent.Type.RESYNC) {
+                        logger.warn("Follower missed changes, reloading snapshot");
+                        bootstrap(commands);
+                    } else if (event.getSequence() > appliedSequence) {
+                        db.apply(event);
+                        appliedSequence = event.getSequence();
+                        appliedVersion = event.getVersion();
+                        lagMillis = System.currentTimeMillis() - event.getTime();
+                    }
+                }
+                logger.warn("Primary " + host + ":" + port + " closed replication stream");
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                logger.warn("Replication from " + host + ":" + port + " failed: " + e);
+            } catch (InterruptedException e) {
+                return;
+            }
+            connected = false;
+            try {
+                Thread.sleep(RETRY_DELAY);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * заполнить коллекцию снимком основного сервера
+     * @param commands соединение для команд
+     */
+    private void bootstrap(DbClient commands) throws IOException, ClassNotFoundException {
+        CommandResult result = commands.exec(new SnapshotCommand());
+        if (result.getType() != CommandResult.Type.SUCCESS) {
+            throw new IOException(result.getError());
+        }
+        CollectionSnapshot snapshot = (CollectionSnapshot) ((CommandResultWithObject) result).getObject();
+        db.replace(snapshot.getMovies());
+        appliedVersion = snapshot.getVersion();
+        appliedSequence = snapshot.getSequence();
+        primarySequence = Math.max(primarySequence, snapshot.getSequence());
+        logger.info("Follower loaded " + snapshot.getMovies().size() + " movies at version " + snapshot.getVersion());
+    }
+
+    /**
+     * Функция получения отставания копии в изменениях коллекции основного сервера
+     * @return количество полученных, но еще не примененных изменений
+     */
+    public long getVersionLag() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * Функция получения значения поля connected
+     * @return True-если копия загружена и получает изменения основного сервера
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Функция получения отставания копии по времени
+     * @return время от изменения на основном сервере до применения последнего изменения в миллисекундах
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "follower of " + host + ":" + port + (connected ? "" : " (disconnected)")
+                + ", version " + appliedVersion + ", lag " + getVersionLag() + " changes / " + lagMillis + " ms";
+    }
+}
@@ -0,0 +1,31 @@
+package org.dima.commands;
+
+import org.dima.movies.Movie;
+
+import java.time.YearMonth;
+import java.util.function.Function;
+
+/**
+ * Признаки, по которым фильмы группируются командой Aggregate
+ */
+public enum GroupKey {
+    GENRE(Movie::getGenre),
+    RATING(Movie::getMpaaRating),
+    DIRECTOR(movie -> movie.getDirector().getName()),
+    CREATION_MONTH(movie -> YearMonth.from(movie.getCreationDate()));
+
+    private final Function<Movie, Comparable<?>> getter;
+
+    GroupKey(Function<Movie, Comparable<?>> getter) {
+        this.getter = getter;
+    }
+
+    /**
+     * Функция получения группы фильма
+     * @param movie фильм
+     * @return значение признака или null
+     */
+    public Comparable<?> of(Movie movie) {
+        return getter.apply(movie);
+    }
+}
@@ -0,0 +1,58 @@
+package org.dima.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Кольцо согласованного хеширования ключей по серверам. Каждый сервер занимает
+ * на кольце несколько виртуальных точек, ключ принадлежит серверу первой точки
+ * по часовой стрелке от хеша ключа, поэтому добавление сервера переносит на него
+ * только часть ключей, а ключи распределены между серверами равномерно
+ */
+final class HashRing {
+    private final TreeMap<Long, Integer> points = new TreeMap<Long, Integer>();
+
+    /**
+     * Конструктор кольца
+     * @param nodes количество серверов
+     * @param virtualNodes количество точек каждого сервера на кольце
+     */
+    HashRing(int nodes, int virtualNodes) {
+        if (nodes < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("Ring needs at least one node and one virtual node");
+        }
+        for (int node = 0; node < nodes; node++) {
+            for (int point = 0; point < virtualNodes; point++) {
+                points.putIfAbsent(hash("node-" + node + "#" + point), node);
+            }
+        }
+    }
+
+    /**
+     * найти сервер ключа
+     * @param key ключ
+     * @return номер сервера
+     */
+    int nodeFor(String key) {
+        Map.Entry<Long, Integer> point = points.ceilingEntry(hash(key));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    /**
+     * хеш FNV-1a байтов строки с перемешиванием результата
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,103 @@
+package org.dima.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек в наносекундах с логарифмически-линейными корзинами:
+ * каждая степень двойки делится на {@link #SUB_BUCKETS} равных корзин, поэтому
+ * относительная погрешность значений не больше 1/{@value #SUB_BUCKETS}, а память
+ * гистограммы постоянна. Запись не выделяет памяти и безопасна для нескольких потоков,
+ * значения больше 2^{@value #MAX_BITS} нс попадают в последнюю корзину
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+
+    /**
+     * количество корзин на степень двойки
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * количество бит наибольшего различимого значения
+     */
+    public static final int MAX_BITS = 36;
+
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * записать значение
+     * @param nanos задержка в наносекундах
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude >= MAX_BITS) {
+            return BUCKETS - 1;
+        }
+        int shift = magnitude - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * наибольшее значение корзины
+     */
+    private static long highest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Функция получения количества значений
+     * @return количество записанных значений
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Функция получения наибольшего значения
+     * @return наибольшее записанное значение в наносекундах
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * получить процентиль
+     * @param percent процент значений от 0 до 100
+     * @return значение, не меньше которого заданная доля записанных значений, в наносекундах
+     */
+    public long percentile(double percent) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percent)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return i == BUCKETS - 1 ? getMax() : Math.min(highest(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
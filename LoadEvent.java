@@ -0,0 +1,22 @@
+package org.dima.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR загрузки коллекции из файла при запуске сервера
+ */
+@Name("org.dima.Load")
+@Label("Movies Load")
+@Category("Movies")
+@Description("Разбор файла XML и построение индексов")
+final class LoadEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Records")
+    long records;
+}
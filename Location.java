@@ -2,6 +2,7 @@ package org.dima.movies;
 
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.Objects;
 import java.util.Scanner;
 
 /**
@@ -129,4 +130,26 @@ public class Location  implements CanValidate, Serializable {
     public boolean validate() {
         return !(name == null || name.isEmpty());
     }
+
+    /**
+     * сравнение расположений по значению
+     * @param o объект для сравнения
+     * @return True-расположения совпадают
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Location location = (Location) o;
+        return x == location.x && y == location.y && Objects.equals(name, location.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y, name);
+    }
 }
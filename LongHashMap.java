@@ -0,0 +1,229 @@
+package org.dima.tools;
+
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Хэш-таблица с ключами примитивного типа long и открытой адресацией.
+ * Порядок добавления хранится в плотных массивах ключей и значений, поэтому
+ * на запись не создается ни упакованного ключа, ни объекта элемента.
+ * Изменять таблицу может только один поток, читать - любое количество потоков без блокировок:
+ * новые массивы публикуются целиком через volatile поле, а изменения в существующих массивах
+ * становятся гарантированно видимыми читателям после публикации владельцем таблицы
+ * (например, через запись volatile версии)
+ *
+ * @param <V> тип значений
+ */
+public class LongHashMap<V> {
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+
+    /**
+     * Внутреннее состояние таблицы. Ячейка slots содержит номер элемента в плотных массивах плюс один
+     */
+    private static final class Table {
+        final int[] slots;
+        final long[] keys;
+        final Object[] values;
+        final int mask;
+        int used = 0;
+        int live = 0;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            slots = new int[capacity * 2];
+            mask = slots.length - 1;
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * найти номер элемента в плотных массивах
+     * @param t таблица
+     * @param key ключ
+     * @return номер элемента или -1
+     */
+    private static int indexOf(Table t, long key) {
+        int[] slots = t.slots;
+        for (int slot = hash(key) & t.mask; ; slot = (slot + 1) & t.mask) {
+            int entry = slots[slot];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != DELETED && t.keys[entry - 1] == key && t.values[entry - 1] != null) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * получить значение по ключу
+     * @param key ключ
+     * @return значение или null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Table t = table;
+        int index = indexOf(t, key);
+        return index >= 0 ? (V) t.values[index] : null;
+    }
+
+    /**
+     * записать значение по ключу. Существующий ключ сохраняет свое место в порядке добавления
+     * @param key ключ
+     * @param value значение, не может быть null
+     * @return предыдущее значение или null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        Table t = table;
+        int index = indexOf(t, key);
+        if (index >= 0) {
+            V old = (V) t.values[index];
+            t.values[index] = value;
+            return old;
+        }
+        if (t.used == t.keys.length) {
+            t = rebuild(t);
+        }
+        index = t.used;
+        t.keys[index] = key;
+        t.values[index] = value;
+        int slot = hash(key) & t.mask;
+        while (t.slots[slot] > 0) {
+            slot = (slot + 1) & t.mask;
+        }
+        t.slots[slot] = index + 1;
+        t.used++;
+        t.live++;
+        return null;
+    }
+
+    /**
+     * удалить значение по ключу
+     * @param key ключ
+     * @return удаленное значение или null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        Table t = table;
+        int index = indexOf(t, key);
+        if (index < 0) {
+            return null;
+        }
+        V old = (V) t.values[index];
+        delete(t, key, index);
+        return old;
+    }
+
+    /**
+     * удалить значение по ключу, если оно совпадает с заданным
+     * @param key ключ
+     * @param value ожидаемое значение
+     * @return True-если удалил,False-если значение другое
+     */
+    public boolean remove(long key, V value) {
+        Table t = table;
+        int index = indexOf(t, key);
+        if (index < 0 || t.values[index] != value) {
+            return false;
+        }
+        delete(t, key, index);
+        return true;
+    }
+
+    private static void delete(Table t, long key, int index) {
+        for (int slot = hash(key) & t.mask; ; slot = (slot + 1) & t.mask) {
+            if (t.slots[slot] == index + 1) {
+                t.slots[slot] = DELETED;
+                break;
+            }
+        }
+        t.values[index] = null;
+        t.live--;
+    }
+
+    /**
+     * построить новую таблицу без удаленных элементов, при необходимости большего размера,
+     * и опубликовать её
+     * @param t текущая таблица
+     * @return новая таблица
+     */
+    private Table rebuild(Table t) {
+        int capacity = t.keys.length;
+        if (t.live * 2 > capacity) {
+            capacity *= 2;
+        }
+        Table next = new Table(capacity);
+        for (int i = 0; i < t.used; i++) {
+            Object value = t.values[i];
+            if (value != null) {
+                int index = next.used++;
+                next.keys[index] = t.keys[i];
+                next.values[index] = value;
+                int slot = hash(t.keys[i]) & next.mask;
+                while (next.slots[slot] != EMPTY) {
+                    slot = (slot + 1) & next.mask;
+                }
+                next.slots[slot] = index + 1;
+            }
+        }
+        next.live = next.used;
+        table = next;
+        return next;
+    }
+
+    /**
+     * колличество элементов
+     * @return размер таблицы
+     */
+    public int size() {
+        return table.live;
+    }
+
+    /**
+     * удалить все элементы
+     */
+    public void clear() {
+        table = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * обойти элементы в порядке добавления
+     * @param consumer получатель значения и ключа
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<V> consumer) {
+        Table t = table;
+        int used = t.used;
+        for (int i = 0; i < used; i++) {
+            Object value = t.values[i];
+            if (value != null) {
+                consumer.accept((V) value, t.keys[i]);
+            }
+        }
+    }
+
+    /**
+     * значения в порядке добавления
+     * @return поток значений
+     */
+    @SuppressWarnings("unchecked")
+    public Stream<V> values() {
+        Table t = table;
+        return IntStream.range(0, t.used)
+                .mapToObj(i -> (V) t.values[i])
+                .filter(Objects::nonNull);
+    }
+}
@@ -139,6 +139,22 @@ public class Movie  implements CanValidate, Comparable<Movie>, Serializable {
         this.director = director;
     }
 
+    /**
+     * получает версию записи в коллекции
+     * @return версия коллекции, в которой фильм был изменен последний раз, 0 - фильм не из коллекции
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * устанавливает версию записи в коллекции
+     * @param version устанавливаемое значение
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * преобразовывает к строке
      * @return преобразованную строку
@@ -154,6 +170,7 @@ public class Movie  implements CanValidate, Comparable<Movie>, Serializable {
                 ", genre=" + genre +
                 ", mpaaRating=" + mpaaRating +
                 ", director=" + director +
+                ", version=" + version +
                 '}';
     }
 
@@ -305,6 +322,7 @@ public class Movie  implements CanValidate, Comparable<Movie>, Serializable {
     private MovieGenre genre; //Поле может быть null
     private MpaaRating mpaaRating; //Поле не может быть null
     private Person director; //Поле не может быть null
+    private long version; //Значение этого поля назначается коллекцией при каждом изменении, в XML не записывается
 
     /**
      * реализация интерфейса для сравнения объектов
@@ -0,0 +1,111 @@
+package org.dima.tools;
+
+import org.dima.movies.*;
+
+import java.io.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Компактное двоичное представление фильма.
+ * В отличие от стандартной сериализации не записывает описания классов,
+ * поэтому запись фильма занимает несколько десятков байт
+ */
+public class MovieCodec {
+
+    /**
+     * Функция кодирования фильма
+     * @param movie фильм
+     * @return байты записи
+     */
+    public static byte[] encode(Movie movie) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeLong(movie.getId());
+            writeString(out, movie.getName());
+            out.writeDouble(movie.getCoordinates().getX());
+            out.writeInt(movie.getCoordinates().getY());
+            out.writeLong(movie.getCreationDate().toEpochDay());
+            out.writeLong(movie.getOscarsCount());
+            out.writeByte(movie.getGenre() != null ? movie.getGenre().ordinal() : -1);
+            out.writeByte(movie.getMpaaRating() != null ? movie.getMpaaRating().ordinal() : -1);
+            Person director = movie.getDirector();
+            writeString(out, director.getName());
+            ZonedDateTime birthday = director.getBirthday();
+            out.writeBoolean(birthday != null);
+            if (birthday != null) {
+                out.writeLong(birthday.toEpochSecond());
+                out.writeInt(birthday.getNano());
+                out.writeUTF(birthday.getZone().getId());
+            }
+            writeString(out, director.getPassportID());
+            out.writeByte(director.getHairColor() != null ? director.getHairColor().ordinal() : -1);
+            Location location = director.getLocation();
+            out.writeInt(location.getX());
+            out.writeLong(location.getY());
+            writeString(out, location.getName());
+            out.writeLong(movie.getVersion());
+            out.close();
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Функция декодирования фильма
+     * @param data байты записи
+     * @return фильм
+     */
+    public static Movie decode(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            Movie movie = new Movie();
+            movie.setId(in.readLong());
+            movie.setName(readString(in));
+            Coordinates coordinates = new Coordinates();
+            coordinates.setX(in.readDouble());
+            coordinates.setY(in.readInt());
+            movie.setCoordinates(coordinates);
+            movie.setCreationDate(LocalDate.ofEpochDay(in.readLong()));
+            movie.setOscarsCount(in.readLong());
+            byte genre = in.readByte();
+            movie.setGenre(genre >= 0 ? MovieGenre.values()[genre] : null);
+            byte rating = in.readByte();
+            movie.setMpaaRating(rating >= 0 ? MpaaRating.values()[rating] : null);
+            Person director = new Person();
+            director.setName(readString(in));
+            if (in.readBoolean()) {
+                Instant instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                director.setBirthday(ZonedDateTime.ofInstant(instant, ZoneId.of(in.readUTF())));
+            }
+            director.setPassportID(readString(in));
+            byte color = in.readByte();
+            director.setHairColor(color >= 0 ? Color.values()[color] : null);
+            Location location = new Location();
+            location.setX(in.readInt());
+            location.setY(in.readLong());
+            location.setName(readString(in));
+            director.setLocation(location);
+            movie.setDirector(director);
+            movie.setVersion(in.readLong());
+            return movie;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,218 @@
+package org.dima.server;
+
+import org.dima.movies.Movie;
+import org.dima.tools.LongHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Поколоночное представление последней версии коллекции.
+ * Поля фильмов хранятся в массивах примитивов, повторяющиеся строки кодируются словарем,
+ * поэтому просмотр коллекции идет по плотным массивам без переходов по ссылкам
+ * Movie - Coordinates - Person - Location.
+ * Изменяет колонки только владелец под блокировкой записи коллекции,
+ * просмотр выполняется без блокировок и повторяется, если во время него были изменения
+ */
+final class MovieColumns {
+    /**
+     * Условие отбора строки
+     */
+    interface RowFilter {
+        boolean test(MovieColumns columns, int row);
+    }
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private final LongHashMap<Integer> rows = new LongHashMap<Integer>();
+    private final HashMap<String, Integer> dictionary = new HashMap<String, Integer>();
+    private final ArrayList<String> words = new ArrayList<String>();
+    private int[] freeRows = new int[MIN_CAPACITY];
+    private int freeCount = 0;
+    private int rowCount = 0;
+    private long version = 0;
+
+    private boolean[] alive = new boolean[MIN_CAPACITY];
+    private long[] ids = new long[MIN_CAPACITY];
+    private long[] oscars = new long[MIN_CAPACITY];
+    private double[] coordinateX = new double[MIN_CAPACITY];
+    private int[] coordinateY = new int[MIN_CAPACITY];
+    private byte[] genres = new byte[MIN_CAPACITY];
+    private byte[] ratings = new byte[MIN_CAPACITY];
+    private long[] creationDays = new long[MIN_CAPACITY];
+    private String[] names = new String[MIN_CAPACITY];
+    private int[] directorNames = new int[MIN_CAPACITY];
+    private int[] locationNames = new int[MIN_CAPACITY];
+
+    /**
+     * записать фильм в колонки
+     * @param id индентификатор
+     * @param movie фильм
+     */
+    void put(long id, Movie movie) {
+        long stamp = lock.writeLock();
+        try {
+            Integer existing = rows.get(id);
+            int row;
+            if (existing != null) {
+                row = existing;
+            } else if (freeCount > 0) {
+                row = freeRows[--freeCount];
+                rows.put(id, row);
+            } else {
+                if (rowCount == ids.length) {
+                    grow(rowCount * 2);
+                }
+                row = rowCount++;
+                rows.put(id, row);
+            }
+            ids[row] = id;
+            oscars[row] = movie.getOscarsCount();
+            coordinateX[row] = movie.getCoordinates().getX();
+            coordinateY[row] = movie.getCoordinates().getY();
+            genres[row] = (byte) (movie.getGenre() != null ? movie.getGenre().ordinal() : -1);
+            ratings[row] = (byte) (movie.getMpaaRating() != null ? movie.getMpaaRating().ordinal() : -1);
+            creationDays[row] = movie.getCreationDate().toEpochDay();
+            names[row] = movie.getName();
+            directorNames[row] = encode(movie.getDirector().getName());
+            locationNames[row] = encode(movie.getDirector().getLocation().getName());
+            alive[row] = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * удалить фильм из колонок
+     * @param id индентификатор
+     */
+    void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            Integer row = rows.remove(id);
+            if (row != null) {
+                alive[row] = false;
+                names[row] = null;
+                if (freeCount == freeRows.length) {
+                    freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+                }
+                freeRows[freeCount++] = row;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * отметить, что колонки соответствуют заданной версии коллекции
+     * @param version версия коллекции
+     */
+    void setVersion(long version) {
+        long stamp = lock.writeLock();
+        this.version = version;
+        lock.unlockWrite(stamp);
+    }
+
+    /**
+     * найти индентификаторы фильмов, удовлетворяющих условию
+     * @param version версия коллекции, для которой нужен результат
+     * @param filter условие отбора
+     * @return индентификаторы в порядке строк или null, если колонки не соответствуют версии
+     * или изменились во время просмотра
+     */
+    long[] scan(long version, RowFilter filter) {
+        long stamp = lock.tryOptimisticRead();
+        try {
+            if (this.version != version) {
+                return null;
+            }
+            int count = rowCount;
+            boolean[] alive = this.alive;
+            long[] ids = this.ids;
+            long[] result = new long[16];
+            int found = 0;
+            for (int row = 0; row < count; row++) {
+                if (alive[row] && filter.test(this, row)) {
+                    if (found == result.length) {
+                        result = Arrays.copyOf(result, found * 2);
+                    }
+                    result[found++] = ids[row];
+                }
+            }
+            return lock.validate(stamp) ? Arrays.copyOf(result, found) : null;
+        } catch (RuntimeException e) {
+            if (lock.validate(stamp)) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    long oscars(int row) {
+        return oscars[row];
+    }
+
+    double coordinateX(int row) {
+        return coordinateX[row];
+    }
+
+    int coordinateY(int row) {
+        return coordinateY[row];
+    }
+
+    int genre(int row) {
+        return genres[row];
+    }
+
+    int rating(int row) {
+        return ratings[row];
+    }
+
+    long creationDay(int row) {
+        return creationDays[row];
+    }
+
+    String name(int row) {
+        return names[row];
+    }
+
+    String directorName(int row) {
+        return words.get(directorNames[row]);
+    }
+
+    String locationName(int row) {
+        return words.get(locationNames[row]);
+    }
+
+    /**
+     * получить код строки в словаре, добавив её при необходимости
+     * @param word строка
+     * @return код строки
+     */
+    private int encode(String word) {
+        Integer code = dictionary.get(word);
+        if (code == null) {
+            code = words.size();
+            words.add(word);
+            dictionary.put(word, code);
+        }
+        return code;
+    }
+
+    private void grow(int capacity) {
+        alive = Arrays.copyOf(alive, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        oscars = Arrays.copyOf(oscars, capacity);
+        coordinateX = Arrays.copyOf(coordinateX, capacity);
+        coordinateY = Arrays.copyOf(coordinateY, capacity);
+        genres = Arrays.copyOf(genres, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        creationDays = Arrays.copyOf(creationDays, capacity);
+        names = Arrays.copyOf(names, capacity);
+        directorNames = Arrays.copyOf(directorNames, capacity);
+        locationNames = Arrays.copyOf(locationNames, capacity);
+    }
+}
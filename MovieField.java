@@ -0,0 +1,78 @@
+package org.dima.commands;
+
+import org.dima.movies.*;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * Поля фильма, по которым можно отбирать и сортировать фильмы на сервере
+ */
+public enum MovieField {
+    ID(Movie::getId, Long::valueOf),
+    NAME(Movie::getName, value -> value),
+    OSCARS(Movie::getOscarsCount, Long::valueOf),
+    COORDINATE_X(movie -> movie.getCoordinates().getX(), Double::valueOf),
+    COORDINATE_Y(movie -> movie.getCoordinates().getY(), Integer::valueOf),
+    CREATION_DATE(Movie::getCreationDate, LocalDate::parse),
+    GENRE(Movie::getGenre, value -> MovieGenre.valueOf(value.toUpperCase())),
+    RATING(Movie::getMpaaRating, value -> MpaaRating.valueOf(value.toUpperCase())),
+    DIRECTOR_NAME(movie -> movie.getDirector().getName(), value -> value),
+    DIRECTOR_PASSPORT(movie -> movie.getDirector().getPassportID(), value -> value),
+    LOCATION_NAME(movie -> movie.getDirector().getLocation().getName(), value -> value),
+    LOCATION_X(movie -> movie.getDirector().getLocation().getX(), Integer::valueOf),
+    LOCATION_Y(movie -> movie.getDirector().getLocation().getY(), Long::valueOf);
+
+    private final Function<Movie, Comparable<?>> getter;
+    private final Function<String, Comparable<?>> parser;
+
+    MovieField(Function<Movie, Comparable<?>> getter, Function<String, Comparable<?>> parser) {
+        this.getter = getter;
+        this.parser = parser;
+    }
+
+    /**
+     * Функция получения значения поля фильма
+     * @param movie фильм
+     * @return значение поля или null
+     */
+    public Comparable<?> get(Movie movie) {
+        return getter.apply(movie);
+    }
+
+    /**
+     * Функция разбора значения поля из строки
+     * @param value строка
+     * @return значение поля
+     * @throws IllegalArgumentException строка не является значением поля
+     */
+    public Comparable<?> parse(String value) throws IllegalArgumentException {
+        try {
+            return parser.apply(value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid value for " + this + ": " + value);
+        }
+    }
+
+    /**
+     * Функция проверки, что значение поля - число, по которому можно считать сумму и среднее
+     * @return True-если поле числовое
+     */
+    public boolean isNumeric() {
+        return this == ID || this == OSCARS || this == COORDINATE_X || this == COORDINATE_Y
+                || this == LOCATION_X || this == LOCATION_Y;
+    }
+
+    /**
+     * Функция получения порядка фильмов по значению поля, фильмы без значения идут последними
+     * @param descending по убыванию
+     * @return порядок фильмов
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Comparator<Movie> comparator(boolean descending) {
+        Comparator<Comparable> values = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        return Comparator.comparing((Movie movie) -> (Comparable) get(movie), Comparator.nullsLast(values))
+                .thenComparing(Movie::getId);
+    }
+}
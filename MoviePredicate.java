@@ -0,0 +1,314 @@
+package org.dima.commands;
+
+import org.dima.movies.Movie;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Условие отбора фильмов, которое передается на сервер в виде дерева:
+ * сравнения значений полей, объединенные операциями AND, OR и NOT
+ */
+public abstract class MoviePredicate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * проверить условие для фильма
+     * @param movie фильм
+     * @return True-если фильм удовлетворяет условию
+     */
+    public abstract boolean test(Movie movie);
+
+    /**
+     * однозначная запись условия для ключа кэша ответов: константы записываются
+     * вместе с типом и экранируются, поэтому разные условия не совпадают по записи
+     * @return запись условия
+     */
+    public String toKey() {
+        StringBuilder key = new StringBuilder();
+        appendKey(key);
+        return key.toString();
+    }
+
+    abstract void appendKey(StringBuilder key);
+
+    /**
+     * условие сравнения значения поля с константой
+     * @param field поле
+     * @param operator операция сравнения
+     * @param value константа того же типа, что и поле
+     * @return условие
+     */
+    public static MoviePredicate compare(MovieField field, Operator operator, Comparable<?> value) {
+        return new Compare(field, operator, value);
+    }
+
+    /**
+     * условие выполнения всех условий
+     * @param operands условия
+     * @return условие
+     */
+    public static MoviePredicate and(MoviePredicate... operands) {
+        return new And(Arrays.asList(operands));
+    }
+
+    /**
+     * условие выполнения хотя бы одного из условий
+     * @param operands условия
+     * @return условие
+     */
+    public static MoviePredicate or(MoviePredicate... operands) {
+        return new Or(Arrays.asList(operands));
+    }
+
+    /**
+     * отрицание условия
+     * @param operand условие
+     * @return условие
+     */
+    public static MoviePredicate not(MoviePredicate operand) {
+        return new Not(operand);
+    }
+
+    /**
+     * Операции сравнения
+     */
+    public enum Operator {
+        EQ("="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">="), CONTAINS("~");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * найти операцию по обозначению
+         * @param symbol обозначение
+         * @return операция или null
+         */
+        public static Operator of(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Сравнение значения поля с константой. Фильм без значения поля удовлетворяет только условию "!="
+     */
+    public static final class Compare extends MoviePredicate {
+        private final MovieField field;
+        private final Operator operator;
+        private final Comparable<?> value;
+
+        public Compare(MovieField field, Operator operator, Comparable<?> value) {
+            if (field == null || operator == null || value == null) {
+                throw new IllegalArgumentException("Incomplete condition");
+            }
+            if (operator == Operator.CONTAINS && !(value instanceof String)) {
+                throw new IllegalArgumentException("Operator ~ requires a string");
+            }
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public MovieField getField() {
+            return field;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        public Comparable<?> getValue() {
+            return value;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public boolean test(Movie movie) {
+            Comparable actual = field.get(movie);
+            if (actual == null) {
+                return operator == Operator.NE;
+            }
+            if (operator == Operator.CONTAINS) {
+                return actual.toString().toUpperCase().contains(value.toString().toUpperCase());
+            }
+            int cmp = actual.compareTo(value);
+            switch (operator) {
+                case EQ:
+                    return cmp == 0;
+                case NE:
+                    return cmp != 0;
+                case LT:
+                    return cmp < 0;
+                case LE:
+                    return cmp <= 0;
+                case GT:
+                    return cmp > 0;
+                default:
+                    return cmp >= 0;
+            }
+        }
+
+        @Override
+        void appendKey(StringBuilder key) {
+            key.append(field.name()).append(' ').append(operator.name()).append(' ')
+                    .append(value.getClass().getName()).append(" \"");
+            String text = value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\\') {
+                    key.append('\\');
+                }
+                key.append(c);
+            }
+            key.append('"');
+        }
+
+        @Override
+        public String toString() {
+            String text = value instanceof String ? "\"" + value + "\"" : String.valueOf(value);
+            return field.toString().toLowerCase() + " " + operator.getSymbol() + " " + text;
+        }
+    }
+
+    /**
+     * Условие, составленное из нескольких условий
+     */
+    public static abstract class Composite extends MoviePredicate {
+        private final List<MoviePredicate> operands;
+
+        Composite(List<MoviePredicate> operands) {
+            if (operands.isEmpty() || operands.contains(null)) {
+                throw new IllegalArgumentException("Incomplete condition");
+            }
+            this.operands = Collections.unmodifiableList(new ArrayList<MoviePredicate>(operands));
+        }
+
+        public List<MoviePredicate> getOperands() {
+            return operands;
+        }
+
+        void appendKey(StringBuilder key, String operator) {
+            key.append(operator).append('(');
+            for (int i = 0; i < operands.size(); i++) {
+                if (i > 0) {
+                    key.append(", ");
+                }
+                operands.get(i).appendKey(key);
+            }
+            key.append(')');
+        }
+
+        String join(String operator) {
+            return operands.stream().map(Object::toString).collect(Collectors.joining(" " + operator + " ", "(", ")"));
+        }
+    }
+
+    /**
+     * Выполнение всех условий
+     */
+    public static final class And extends Composite {
+        public And(List<MoviePredicate> operands) {
+            super(operands);
+        }
+
+        @Override
+        public boolean test(Movie movie) {
+            for (MoviePredicate operand : getOperands()) {
+                if (!operand.test(movie)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void appendKey(StringBuilder key) {
+            appendKey(key, "AND");
+        }
+
+        @Override
+        public String toString() {
+            return join("AND");
+        }
+    }
+
+    /**
+     * Выполнение хотя бы одного условия
+     */
+    public static final class Or extends Composite {
+        public Or(List<MoviePredicate> operands) {
+            super(operands);
+        }
+
+        @Override
+        public boolean test(Movie movie) {
+            for (MoviePredicate operand : getOperands()) {
+                if (operand.test(movie)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void appendKey(StringBuilder key) {
+            appendKey(key, "OR");
+        }
+
+        @Override
+        public String toString() {
+            return join("OR");
+        }
+    }
+
+    /**
+     * Отрицание условия
+     */
+    public static final class Not extends MoviePredicate {
+        private final MoviePredicate operand;
+
+        public Not(MoviePredicate operand) {
+            if (operand == null) {
+                throw new IllegalArgumentException("Incomplete condition");
+            }
+            this.operand = operand;
+        }
+
+        public MoviePredicate getOperand() {
+            return operand;
+        }
+
+        @Override
+        public boolean test(Movie movie) {
+            return !operand.test(movie);
+        }
+
+        @Override
+        void appendKey(StringBuilder key) {
+            key.append("NOT(");
+            operand.appendKey(key);
+            key.append(')');
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + operand;
+        }
+    }
+}
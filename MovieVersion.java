@@ -0,0 +1,92 @@
+package org.dima.server;
+
+import org.dima.movies.Movie;
+
+/**
+ * Версия записи коллекции. Версии одного фильма образуют цепочку от новой к старой,
+ * удаление фильма записывается версией без объекта.
+ * Фильм хранится либо в куче, либо в {@link OffHeapStore} и тогда декодируется при каждом обращении
+ */
+final class MovieVersion {
+    /**
+     * версия коллекции, в которой запись была создана
+     */
+    final long version;
+    /**
+     * фильм или null если в этой версии фильм удален или хранится вне кучи
+     */
+    private final Movie movie;
+    /**
+     * хранилище вне кучи или null
+     */
+    private final OffHeapStore store;
+    /**
+     * дескриптор записи в хранилище вне кучи, меняется при уплотнении
+     */
+    volatile long handle;
+    /**
+     * размер сериализованного фильма
+     */
+    final int size;
+    /**
+     * предыдущая версия записи или null если она больше никому не нужна
+     */
+    volatile MovieVersion previous;
+
+    MovieVersion(long version, Movie movie, int size, MovieVersion previous) {
+        this.version = version;
+        this.movie = movie;
+        this.store = null;
+        this.handle = OffHeapStore.NO_HANDLE;
+        this.size = size;
+        this.previous = previous;
+    }
+
+    MovieVersion(long version, OffHeapStore store, long handle, int size, MovieVersion previous) {
+        this.version = version;
+        this.movie = null;
+        this.store = store;
+        this.handle = handle;
+        this.size = size;
+        this.previous = previous;
+    }
+
+    /**
+     * проверить, что в этой версии фильм удален
+     * @return True-если удален
+     */
+    boolean isDeleted() {
+        return movie == null && store == null;
+    }
+
+    /**
+     * получить фильм этой версии
+     * @return фильм или null если фильм удален или запись уже освобождена
+     */
+    Movie movie() {
+        if (store == null) {
+            return movie;
+        }
+        while (true) {
+            long current = handle;
+            Movie result = store.read(current);
+            if (result != null || handle == current) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * найти в цепочке запись, видимую в заданной версии коллекции
+     * @param snapshot версия коллекции
+     * @return видимая запись или null если фильма в этой версии не было
+     */
+    MovieVersion visibleAt(long snapshot) {
+        for (MovieVersion record = this; record != null; record = record.previous) {
+            if (record.version <= snapshot) {
+                return record;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,27 @@
+package org.dima.client;
+
+import org.dima.commands.CommandResult;
+import org.dima.commands.MovieCommand;
+
+import java.io.IOException;
+
+/**
+ * Клиент коллекции фильмов: одиночный сервер или несколько серверов, между которыми распределена коллекция
+ */
+public interface MoviesClient extends AutoCloseable {
+    /**
+     * Метод обработки команд
+     * @param command команда
+     * @return  результат исполнения
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    CommandResult exec(MovieCommand command) throws IOException, ClassNotFoundException;
+
+    /**
+     * Закрытие соединений
+     * @throws IOException
+     */
+    @Override
+    void close() throws IOException;
+}
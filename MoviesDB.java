@@ -1,6 +1,17 @@
 package org.dima.server;
 
+import org.dima.commands.ChangeEvent;
+import org.dima.commands.GroupKey;
+import org.dima.commands.MovieField;
+import org.dima.commands.MoviePredicate;
+import org.dima.commands.SpatialTarget;
+import org.dima.commands.TimeField;
 import org.dima.movies.*;
+import org.dima.tools.LongHashMap;
+import org.dima.tools.NameDictionary;
+import org.dima.tools.NodeIds;
+import org.dima.tools.ObjectSizeComparator;
+import org.dima.tools.TimeIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,17 +23,34 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Этот класс реализует взаимодействие с коллекцией
+ * Этот класс реализует взаимодействие с коллекцией.
+ * Каждое изменение коллекции создает новую версию записей, чтение выполняется без блокировок
+ * на снимке версии ({@link MoviesSnapshot}), изменения коллекции и её индексов
+ * выполняются атомарно под общей блокировкой записи.
+ * Старые версии записей удаляются, когда не остается снимков, которые их видят
  */
-public class MoviesDB {
+public class MoviesDB implements MoviesStorage {
     final static Logger logger = LoggerFactory.getLogger(DbWorker.class);
     final public static Locale defaultLocale = new Locale("ru");;
 
-    private MoviesDbInformation information;
+    private final LocalDateTime initTime = LocalDateTime.now();
+    private volatile long version = 0;
+
+    private static final long COMPACTION_PERIOD = 10;
+    private static final ParallelScanner scanner = ParallelScanner.fromProperties();
 
     /**
      * Конструктор класса Базы Данных
@@ -31,11 +59,57 @@ public class MoviesDB {
      * @throws XmlParseException Неверный формат данных
      */
     public MoviesDB(Path source) throws XmlParseException {
+        this(source, new AtomicLong(), new Canonicalizer(), new EventSequence(), false);
+    }
+
+    /**
+     * Конструктор части коллекции с общим для нескольких частей счетчиком индентификаторов
+     *
+     * @param source     Файл источника данных XML
+     * @param idSequence счетчик индентификаторов
+     * @param canonicalizer пул общих экземпляров повторяющихся частей фильмов
+     * @param events     общая для нескольких частей нумерация событий изменения
+     * @param keepIds    сохранять индентификаторы из файла вместо назначения новых
+     * @throws XmlParseException Неверный формат данных
+     */
+    MoviesDB(Path source, AtomicLong idSequence, Canonicalizer canonicalizer, EventSequence events, boolean keepIds) throws XmlParseException {
         Locale.setDefault(defaultLocale);
         this.source = source;
-        this.movies = new LinkedHashMap<Long, Movie>();
-        this.nameIndex = new TreeMap<String, Long>();
-        parseXmlFile(source);
+        this.idSequence = idSequence;
+        this.events = events;
+        this.keepIds = keepIds;
+        this.movies = new LongHashMap<MovieVersion>();
+        this.nameIndex = new NameDictionary();
+        this.sizeIndex = new ConcurrentSkipListSet<SizeKey>();
+        this.directorIndex = new DirectorIndex();
+        this.timeIndex = new EnumMap<TimeField, TimeIndex>(TimeField.class);
+        for (TimeField field : TimeField.values()) {
+            timeIndex.put(field, new TimeIndex());
+        }
+        this.spatialIndex = new EnumMap<SpatialTarget, SpatialGrid>(SpatialTarget.class);
+        for (SpatialTarget target : SpatialTarget.values()) {
+            spatialIndex.put(target, new SpatialGrid(Double.parseDouble(System.getProperty("movies.grid.cell", "10"))));
+        }
+        this.columns = Boolean.getBoolean("movies.columnar") ? new MovieColumns() : null;
+        if ("offheap".equals(System.getProperty("movies.storage"))) {
+            this.store = new OffHeapStore(Integer.getInteger("movies.arena.mb", 64) * 1024 * 1024);
+            this.store.scheduleCompaction(this::compact, COMPACTION_PERIOD);
+            this.canonicalizer = null;
+        } else {
+            this.store = null;
+            this.canonicalizer = canonicalizer;
+        }
+        LoadEvent event = new LoadEvent();
+        event.begin();
+        loading = true;
+        int records = parseXmlFile(source);
+        loading = false;
+        rebuildTimeIndexes();
+        if (event.shouldCommit()) {
+            event.file = source.toString();
+            event.records = records;
+            event.commit();
+        }
 
         //runTests();
     }
@@ -44,9 +118,11 @@ public class MoviesDB {
      * Парсер Базы данных из XML
      *
      * @param source Файл источника данных XML
+     * @return количество прочитанных записей
      * @throws XmlParseException Неверный формат данных
      */
-    private void parseXmlFile(Path source) throws XmlParseException {
+    private int parseXmlFile(Path source) throws XmlParseException {
+        int records = 0;
         try (Scanner scanner = new Scanner(source)) {
             scanner.findWithinHorizon("<MOVIES>", 0);
             scanner.useDelimiter("</MOVIES>");
@@ -57,12 +133,19 @@ public class MoviesDB {
                 scanner.useDelimiter("</MOVIE>");
                 if (scanner.hasNext()) {
                     Movie movie = Movie.fromXml(scanner);
-                    insert(movie);
+                    if (keepIds) {
+                        update(movie.getId(), movie);
+                    } else {
+                        insert(movie);
+                    }
+                    records++;
                 }
             }
         } catch (IllegalArgumentException | DateTimeParseException | IOException e) {
             throw new XmlParseException(e.getMessage());
         }
+        savedVersion = version;
+        return records;
     }
 
     /**
@@ -72,28 +155,96 @@ public class MoviesDB {
      * @throws Exception ошибка записи в файл
      */
     public void printToXmlFile(Path source) throws Exception {
-        try (PrintWriter writer = new PrintWriter(source.toFile())) {
+        try (PrintWriter writer = new PrintWriter(source.toFile());
+             MoviesSnapshot snapshot = openSnapshot()) {
             writer.println("<MOVIES>");
-            for (Movie movie : movies.values()) {
+            snapshot.movies().forEach(movie -> {
                 writer.println("\t<MOVIE>");
                 movie.toXml(writer, "\t\t");
                 writer.println("\t</MOVIE>");
-            }
+            });
             writer.println("</MOVIES>");
         }
     }
 
+    /**
+     * Сохранение коллекции в файл источника, если она изменилась после последнего сохранения
+     *
+     * @throws Exception ошибка записи в файл
+     */
     public void save() throws Exception {
-        printToXmlFile(getSource());
+        long current = version;
+        if (current != savedVersion || !Files.exists(getSource())) {
+            SaveEvent event = new SaveEvent();
+            event.begin();
+            printToXmlFile(getSource());
+            savedVersion = current;
+            if (event.shouldCommit()) {
+                event.file = getSource().toString();
+                event.bytes = Files.size(getSource());
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * открыть снимок текущей версии коллекции.
+     * Снимок необходимо закрыть после использования
+     *
+     * @return снимок коллекции
+     */
+    public MoviesSnapshot openSnapshot() {
+        synchronized (pins) {
+            long pinned = version;
+            pins.merge(pinned, 1, Integer::sum);
+            return new MoviesSnapshot(this, pinned);
+        }
     }
 
     /**
      * получить объект структуры данных связанных с фильмами
      *
-     * @return список фильмов
+     * @return копия текущей версии коллекции в порядке добавления
+     */
+    public Map<Long, Movie> getMovies() {
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            LinkedHashMap<Long, Movie> result = new LinkedHashMap<Long, Movie>();
+            snapshot.movies().forEach(movie -> result.put(movie.getId(), movie));
+            return result;
+        }
+    }
+
+    /**
+     * получить список фильмов, упорядоченный по размеру сериализованного объекта.
+     * Порядок берется из поддерживаемого индекса, сериализация при этом не выполняется
+     *
+     * @return список фильмов в порядке возрастания размера
+     */
+    public List<Movie> getMoviesBySize() {
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            return snapshot.moviesBySize();
+        }
+    }
+
+    /**
+     * получить закэшированный размер сериализованного фильма
+     *
+     * @param id индентификатор
+     * @return размер в байтах или 0 если фильма нет в коллекции
+     */
+    public int getObjectSize(Long id) {
+        MovieVersion head = chain(id);
+        return head != null ? head.size : 0;
+    }
+
+    /**
+     * компаратор фильмов коллекции по закэшированному размеру
+     *
+     * @return компаратор, не выполняющий сериализацию
      */
-    public LinkedHashMap<Long, Movie> getMovies() {
-        return movies;
+    public Comparator<Movie> sizeComparator() {
+        return Comparator.comparingInt((Movie movie) -> getObjectSize(movie.getId()))
+                .thenComparing(Movie::getId);
     }
 
     /**
@@ -102,12 +253,118 @@ public class MoviesDB {
      * @return возвращает объект information
      */
     public MoviesDbInformation getInformation() {
-        return new MoviesDbInformation(
-                movies.getClass().toString(),
-                LocalDateTime.now(),
-                movies.size(),
-                movies.size() > 0 ? Collections.max(movies.keySet()) : new Long(0)
-        );
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            long[] maxId = {0};
+            int[] count = {0};
+            movies.forEach((head, id) -> {
+                MovieVersion visible = snapshot.visible(head);
+                if (visible != null && !visible.isDeleted()) {
+                    maxId[0] = Math.max(maxId[0], id);
+                    count[0]++;
+                }
+            });
+            return new MoviesDbInformation(
+                    movies.getClass().toString(),
+                    initTime,
+                    count[0],
+                    maxId[0],
+                    canonicalizer != null ? canonicalizer.getSavedBytes() : 0
+            );
+        }
+    }
+
+    /**
+     * добавить получателя событий изменения коллекции
+     *
+     * @param listener получатель
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * удалить получателя событий изменения коллекции
+     *
+     * @param listener получатель
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * получить все фильмы коллекции на одной версии вместе с номером последнего события,
+     * вошедшего в эту версию
+     *
+     * @return снимок коллекции
+     */
+    public CollectionSnapshot snapshot() {
+        MoviesSnapshot snapshot;
+        long sequence;
+        synchronized (events) {
+            snapshot = openSnapshot();
+            sequence = events.current();
+        }
+        try {
+            return new CollectionSnapshot(snapshot.getVersion(), sequence, snapshot.movies().collect(Collectors.toCollection(ArrayList::new)));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * заменить содержимое коллекции фильмами с их индентификаторами одной новой версией,
+     * так что читатели видят либо прежнюю коллекцию, либо новую целиком
+     *
+     * @param replacement новые фильмы коллекции
+     */
+    public void replace(List<Movie> replacement) {
+        Set<Long> keep = replacement.stream().map(Movie::getId).collect(Collectors.toSet());
+        writeLock.lock();
+        try {
+            long next = version + 1;
+            movies.forEach((head, id) -> {
+                if (!keep.contains(id)) {
+                    commit(next, id, null);
+                }
+            });
+            for (Movie movie : replacement) {
+                canonicalize(movie);
+                commit(next, movie.getId(), movie);
+                idSequence.accumulateAndGet(movie.getId(), Math::max);
+            }
+            publish(next);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * применить изменение, полученное от основного сервера. Фильм сохраняет
+     * индентификатор, дату создания и версию записи основного сервера
+     *
+     * @param event событие изменения
+     */
+    public void apply(ChangeEvent event) {
+        switch (event.getType()) {
+            case INSERT:
+            case UPDATE:
+                write(event.getId(), event.getMovie(), null, false);
+                break;
+            case REMOVE:
+                delete(event.getId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * получить версию коллекции. Версия увеличивается при каждом изменении коллекции
+     *
+     * @return текущая версия
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -125,14 +382,32 @@ public class MoviesDB {
      * @param movie фильм
      */
     public void insert(Movie movie) throws IllegalArgumentException {
-        movie.setId(getInformation().getMax_id() + 1);
-        movie.setCreationDate(LocalDate.now());
-        if (movie.validate()) {
-            movies.put(movie.getId(), movie);
-            nameIndex.put(movie.getName(), movie.getId());
-        } else {
-            logger.debug("Movie is invalid");
-            throw new IllegalArgumentException("Movie is invalid");
+        insert(movie, NodeIds.next(idSequence));
+    }
+
+    /**
+     * втавить фильм с заранее выделенным индентификатором
+     *
+     * @param movie фильм
+     * @param id    индентификатор
+     */
+    void insert(Movie movie, long id) throws IllegalArgumentException {
+        writeLock.lock();
+        try {
+            movie.setId(id);
+            movie.setCreationDate(LocalDate.now());
+            if (movie.validate()) {
+                canonicalize(movie);
+                long next = version + 1;
+                movie.setVersion(next);
+                commit(next, movie.getId(), movie);
+                publish(next);
+            } else {
+                logger.debug("Movie is invalid");
+                throw new IllegalArgumentException("Movie is invalid");
+            }
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -143,7 +418,18 @@ public class MoviesDB {
      * @return фильм
      */
     public Movie findById(Long id) {
-        return movies.get(id);
+        return id != null ? findById(id.longValue()) : null;
+    }
+
+    /**
+     * найти по индентификатору без упаковки ключа
+     *
+     * @param id индентификатор
+     * @return фильм
+     */
+    public Movie findById(long id) {
+        MovieVersion head = movies.get(id);
+        return head != null ? head.movie() : null;
     }
 
     /**
@@ -153,7 +439,7 @@ public class MoviesDB {
      * @return фильм
      */
     public Long findByName(String name) {
-        return nameIndex.get(name);
+        return name != null ? nameIndex.get(name) : null;
     }
 
     /**
@@ -163,13 +449,47 @@ public class MoviesDB {
      * @param movie новый элемент
      */
     public void update(Long id, Movie movie) throws IllegalArgumentException {
-        if (movie != null && movie.validate()) {
-            Movie old = findById(id);
-            if (old != null) {
-                nameIndex.remove(findById(id).getName());
+        write(id, movie, null, true);
+    }
+
+    /**
+     * обновить элемент коллекции по индентификатору, если версия записи не изменилась
+     *
+     * @param id              индентификатор
+     * @param movie           новый элемент
+     * @param expectedVersion версия записи, прочитанная клиентом, 0 - записи не должно быть
+     * @throws VersionConflictException версия записи отличается от ожидаемой
+     */
+    public void update(Long id, Movie movie, long expectedVersion) throws IllegalArgumentException, VersionConflictException {
+        write(id, movie, expectedVersion, true);
+    }
+
+    /**
+     * записать элемент коллекции по индентификатору
+     *
+     * @param id              индентификатор
+     * @param movie           новый элемент
+     * @param expectedVersion ожидаемая версия записи или null без проверки
+     * @param stamp           True-назначить фильму версию изменения, False-сохранить версию фильма
+     */
+    private void write(Long id, Movie movie, Long expectedVersion, boolean stamp) throws IllegalArgumentException {
+        if (id != null && movie != null && movie.validate()) {
+            canonicalize(movie);
+            writeLock.lock();
+            try {
+                if (expectedVersion != null) {
+                    checkVersion(id, expectedVersion);
+                }
+                long next = version + 1;
+                if (stamp) {
+                    movie.setVersion(next);
+                }
+                commit(next, id, movie);
+                idSequence.accumulateAndGet(id, Math::max);
+                publish(next);
+            } finally {
+                writeLock.unlock();
             }
-            movies.put(id, movie);
-            nameIndex.put(movie.getName(), movie.getId());
         } else {
             logger.debug("Movie is invalid");
             throw new IllegalArgumentException("Movie is invalid");
@@ -183,13 +503,595 @@ public class MoviesDB {
      * @return True-если заменил,False-если не заменил
      */
     public boolean remove(String key) {
-        Long id = findByName(key);
-        if (id != null) {
-            movies.remove(id);
-            nameIndex.remove(key);
+        if (key == null) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            Long id = nameIndex.get(key);
+            if (id != null) {
+                long next = version + 1;
+                commit(next, id, null);
+                publish(next);
+                return true;
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * удалить элемент коллекции, если версия записи не изменилась
+     *
+     * @param key             значение ключа
+     * @param expectedVersion версия записи, прочитанная клиентом
+     * @return True-если удалил,False-если записи не было и ожидалась версия 0
+     * @throws VersionConflictException версия записи отличается от ожидаемой
+     */
+    public boolean remove(String key, long expectedVersion) throws VersionConflictException {
+        writeLock.lock();
+        try {
+            checkVersion(key != null ? nameIndex.get(key) : null, expectedVersion);
+            return remove(key);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * проверить версию записи. Вызывается под блокировкой записи
+     *
+     * @param id              индентификатор или null, если записи нет
+     * @param expectedVersion ожидаемая версия, 0 - записи не должно быть
+     * @throws VersionConflictException версия записи отличается от ожидаемой
+     */
+    private void checkVersion(Long id, long expectedVersion) throws VersionConflictException {
+        Movie current = findById(id);
+        long actual = current != null ? current.getVersion() : 0;
+        if (actual != expectedVersion) {
+            throw new VersionConflictException(id, expectedVersion, actual);
+        }
+    }
+
+    /**
+     * удалить элемент коллекции по индентификатору
+     *
+     * @param id индентификатор
+     * @return True-если удалил,False-если фильма не было
+     */
+    boolean delete(Long id) {
+        writeLock.lock();
+        try {
+            if (findById(id) == null) {
+                return false;
+            }
+            long next = version + 1;
+            commit(next, id, null);
+            publish(next);
             return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * очистить коллекцию вместе со всеми индексами
+     */
+    public void clear() {
+        writeLock.lock();
+        try {
+            long next = version + 1;
+            movies.forEach((head, id) -> commit(next, id, null));
+            publish(next);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * заменить повторяющиеся части фильма общими экземплярами.
+     * Записи вне кучи декодируются при каждом чтении, для них замена не выполняется
+     *
+     * @param movie фильм
+     */
+    private void canonicalize(Movie movie) {
+        if (canonicalizer != null) {
+            canonicalizer.canonicalize(movie);
+        }
+    }
+
+    /**
+     * записать новую версию фильма и обновить индексы. Вызывается под блокировкой записи,
+     * новая версия становится видимой читателям только после {@link #publish(long)}.
+     * Во время загрузки файла индексы времени не ведутся, они строятся после загрузки
+     * целиком в {@link #rebuildTimeIndexes()}. Если есть получатели событий, изменение
+     * запоминается, а событие с номером создается и передается им в {@link #publish(long)}
+     *
+     * @param next  версия коллекции, создаваемая изменением
+     * @param id    индентификатор
+     * @param movie новое значение или null для удаления
+     */
+    private void commit(long next, long id, Movie movie) {
+        MovieVersion head = movies.get(id);
+        if (movie == null && (head == null || head.isDeleted())) {
+            return;
+        }
+        Movie previous = head != null && !head.isDeleted() ? head.movie() : null;
+        if (previous != null) {
+            nameIndex.remove(previous.getName(), id);
+            directorIndex.remove(id, previous.getDirector());
+            if (!loading) {
+                timeIndex.forEach((field, index) -> index.remove(field.get(previous), id));
+            }
+            spatialIndex.forEach((target, grid) -> grid.remove(id, target.x(previous), target.y(previous)));
+        }
+        if (columns != null) {
+            if (movie != null) {
+                columns.put(id, movie);
+            } else {
+                columns.remove(id);
+            }
+        }
+        int size = 0;
+        if (movie != null) {
+            size = ObjectSizeComparator.getObjectSize(movie);
+            nameIndex.put(movie.getName(), id);
+            directorIndex.add(id, movie.getDirector());
+            if (!loading) {
+                timeIndex.forEach((field, index) -> index.add(field.get(movie), id));
+            }
+            spatialIndex.forEach((target, grid) -> grid.add(id, target.x(movie), target.y(movie)));
+            sizeIndex.add(new SizeKey(size, id, next));
+        }
+        if (movie != null && store != null) {
+            movies.put(id, new MovieVersion(next, store, store.allocate(movie), size, head));
+        } else {
+            movies.put(id, new MovieVersion(next, movie, size, head));
+        }
+        if (head != null) {
+            garbage.add(new Garbage(id, next));
+        }
+        if (!listeners.isEmpty()) {
+            ChangeEvent.Type type = movie == null ? ChangeEvent.Type.REMOVE
+                    : previous == null ? ChangeEvent.Type.INSERT : ChangeEvent.Type.UPDATE;
+            changes.add(new Change(type, id, movie, previous));
+        }
+    }
+
+    /**
+     * опубликовать новую версию коллекции, передать получателям события изменений
+     * с номерами из нумерации событий и удалить версии записей, которые больше никто не видит.
+     * Версия публикуется и события нумеруются под монитором нумерации, поэтому снимок
+     * в {@link #snapshot()} согласован с номером события
+     *
+     * @param next новая версия коллекции
+     */
+    private void publish(long next) {
+        if (columns != null) {
+            columns.setVersion(next);
+        }
+        synchronized (events) {
+            version = next;
+            for (Change change : changes) {
+                ChangeEvent event = new ChangeEvent(change.type, change.id, change.movie, next, events.next());
+                for (ChangeListener listener : listeners) {
+                    listener.changed(event, change.previous);
+                }
+            }
+        }
+        changes.clear();
+        reclaim();
+    }
+
+    /**
+     * удалить версии записей, не видимые ни одному открытому снимку. Вызывается под блокировкой записи
+     */
+    private void reclaim() {
+        long oldest;
+        synchronized (pins) {
+            oldest = pins.isEmpty() ? version : Math.min(pins.firstKey(), version);
+        }
+        Garbage item;
+        while ((item = garbage.peek()) != null && item.version <= oldest) {
+            garbage.poll();
+            MovieVersion head = movies.get(item.id);
+            MovieVersion keep = head != null ? head.visibleAt(oldest) : null;
+            if (keep == null) {
+                continue;
+            }
+            for (MovieVersion old = keep.previous; old != null; old = old.previous) {
+                if (!old.isDeleted()) {
+                    sizeIndex.remove(new SizeKey(old.size, item.id, old.version));
+                }
+                if (old.handle != OffHeapStore.NO_HANDLE) {
+                    store.free(old.handle);
+                }
+            }
+            keep.previous = null;
+            if (keep == head && head.isDeleted()) {
+                movies.remove(item.id, head);
+            }
+        }
+    }
+
+    /**
+     * снять уплотнение с расписания и освободить арены хранилища вне кучи. Временные экземпляры
+     * (файл источника при раскладке по частям, части, оставшиеся после уменьшения количества частей)
+     * закрываются сразу после использования
+     */
+    @Override
+    public void close() {
+        if (store == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            store.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * уплотнить хранилище вне кучи: перенести живые записи из разреженных арен и отбросить их.
+     * Выполняется в фоновом потоке под блокировкой записи
+     */
+    private void compact() {
+        writeLock.lock();
+        try {
+            Set<Integer> sparse = store.sparseArenas();
+            if (sparse.isEmpty()) {
+                return;
+            }
+            movies.forEach((head, id) -> {
+                for (MovieVersion record = head; record != null; record = record.previous) {
+                    if (record.handle != OffHeapStore.NO_HANDLE && OffHeapStore.isIn(record.handle, sparse)) {
+                        record.handle = store.move(record.handle);
+                    }
+                }
+            });
+            store.drop(sparse);
+            logger.debug("Off-heap arenas compacted: " + sparse);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * освободить версию, закрепленную снимком
+     *
+     * @param pinned версия снимка
+     */
+    void release(long pinned) {
+        synchronized (pins) {
+            pins.computeIfPresent(pinned, (key, count) -> count > 1 ? count - 1 : null);
+        }
+        if (writeLock.tryLock()) {
+            try {
+                reclaim();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * получить цепочку версий фильма
+     *
+     * @param id индентификатор
+     * @return последняя версия записи или null
+     */
+    MovieVersion chain(Long id) {
+        return id != null ? movies.get(id) : null;
+    }
+
+    /**
+     * получить цепочку версий фильма
+     *
+     * @param id индентификатор
+     * @return последняя версия записи или null
+     */
+    MovieVersion chain(long id) {
+        return movies.get(id);
+    }
+
+    /**
+     * получить цепочки версий всех фильмов в порядке добавления
+     *
+     * @return поток последних версий записей
+     */
+    Stream<MovieVersion> chains() {
+        return movies.values();
+    }
+
+    /**
+     * обойти индекс размеров в порядке возрастания
+     *
+     * @param consumer получатель индентификатора фильма и версии записи
+     */
+    void forEachBySize(SizeIndexConsumer consumer) {
+        for (SizeKey key : sizeIndex) {
+            consumer.accept(key.id, key.version);
+        }
+    }
+
+    /**
+     * отобрать фильмы по условию. Если условие (или одна из частей условия AND) задает
+     * индентификатор или название фильма, кандидаты берутся из индекса, иначе снимок
+     * просматривается {@link ParallelScanner}. Кандидаты из индекса названий проверяются полным условием
+     * на снимке, поэтому в результат не попадают изменения, сделанные после открытия снимка.
+     * При ограничении количества фильмов отбираются лучшие фильмы в куче без полной сортировки
+     *
+     * @param filter условие отбора или null
+     * @param order  порядок фильмов в результате
+     * @param limit  наибольшее количество фильмов или 0 без ограничения
+     * @return отобранные фильмы
+     */
+    public List<Movie> query(MoviePredicate filter, Comparator<Movie> order, int limit) {
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            if (limit > 0) {
+                return collect(snapshot, filter, () -> new BoundedHeap(order, limit), BoundedHeap::add,
+                        heap -> heap, BoundedHeap::merge).toList();
+            }
+            Stream<Movie> indexed = indexed(snapshot, filter);
+            if (indexed != null) {
+                return indexed.filter(filter::test).sorted(order).collect(Collectors.toList());
+            }
+            return scanner.filterSorted(snapshot.spliterator(), movies.size(),
+                    movie -> filter == null || filter.test(movie), order);
+        }
+    }
+
+    /**
+     * собрать результат по фильмам, удовлетворяющим условию: по кандидатам из индекса
+     * или просмотром всего снимка в {@link ParallelScanner}
+     *
+     * @param snapshot    снимок коллекции
+     * @param filter      условие отбора или null
+     * @param supplier    создание пустого результата
+     * @param accumulator добавление фильма в результат
+     * @param finisher    завершение результата куска
+     * @param combiner    слияние результатов кусков
+     * @return результат
+     */
+    private <R> R collect(MoviesSnapshot snapshot, MoviePredicate filter, Supplier<R> supplier,
+                          BiConsumer<R, Movie> accumulator, UnaryOperator<R> finisher, BinaryOperator<R> combiner) {
+        Stream<Movie> indexed = indexed(snapshot, filter);
+        Spliterator<Movie> source = indexed != null ? indexed.spliterator() : snapshot.spliterator();
+        BiConsumer<R, Movie> filtered = filter == null ? accumulator : (result, movie) -> {
+            if (filter.test(movie)) {
+                accumulator.accept(result, movie);
+            }
+        };
+        return scanner.collect(source, indexed != null ? 0 : movies.size(), supplier, filtered, finisher, combiner);
+    }
+
+    /**
+     * выбрать кандидатов для условия по индексу: поиск по индентификатору или по индексу названий.
+     * Сравнения с константой не того типа, что у поля, индексом не обслуживаются
+     *
+     * @param snapshot снимок коллекции
+     * @param filter   условие отбора или null
+     * @return поток кандидатов или null, если подходящего индекса нет
+     */
+    private Stream<Movie> indexed(MoviesSnapshot snapshot, MoviePredicate filter) {
+        List<MoviePredicate> conjuncts = filter instanceof MoviePredicate.And
+                ? ((MoviePredicate.And) filter).getOperands()
+                : Collections.singletonList(filter);
+        MoviePredicate.Compare byName = null;
+        for (MoviePredicate conjunct : conjuncts) {
+            if (!(conjunct instanceof MoviePredicate.Compare)) {
+                continue;
+            }
+            MoviePredicate.Compare compare = (MoviePredicate.Compare) conjunct;
+            if (compare.getField() == MovieField.ID && compare.getOperator() == MoviePredicate.Operator.EQ
+                    && compare.getValue() instanceof Long) {
+                return Stream.of((Long) compare.getValue()).map(snapshot::findById).filter(Objects::nonNull);
+            }
+            if (compare.getField() == MovieField.NAME && compare.getValue() instanceof String
+                    && compare.getOperator() != MoviePredicate.Operator.NE
+                    && compare.getOperator() != MoviePredicate.Operator.CONTAINS
+                    && (byName == null || compare.getOperator() == MoviePredicate.Operator.EQ)) {
+                byName = compare;
+            }
+        }
+        if (byName != null) {
+            String name = (String) byName.getValue();
+            Stream<Long> ids;
+            switch (byName.getOperator()) {
+                case EQ:
+                    ids = Stream.of(nameIndex.get(name)).filter(Objects::nonNull);
+                    break;
+                case LT:
+                    ids = nameIndex.range(null, name).map(Map.Entry::getValue);
+                    break;
+                case LE:
+                    ids = nameIndex.range(null, name + '\0').map(Map.Entry::getValue);
+                    break;
+                case GT:
+                    ids = nameIndex.range(name + '\0', null).map(Map.Entry::getValue);
+                    break;
+                default:
+                    ids = nameIndex.range(name, null).map(Map.Entry::getValue);
+                    break;
+            }
+            return ids.map(snapshot::findById).filter(Objects::nonNull);
+        }
+        return null;
+    }
+
+    /**
+     * получить k первых фильмов в порядке значения поля. Для поля name фильмы берутся
+     * по порядку из индекса названий, пока не наберется k подходящих, для остальных полей
+     * снимок просматривается один раз с кучей из k лучших фильмов
+     *
+     * @param filter     условие отбора или null
+     * @param field      поле
+     * @param descending True-наибольшие значения, False-наименьшие
+     * @param k          количество фильмов
+     * @return не больше k фильмов в заданном порядке
+     */
+    public List<Movie> topK(MoviePredicate filter, MovieField field, boolean descending, int k) {
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            if (field == MovieField.NAME) {
+                Stream<Map.Entry<String, Long>> names = descending ? nameIndex.descendingEntries() : nameIndex.range(null, null);
+                return names.map(entry -> snapshot.findById(entry.getValue()))
+                        .filter(movie -> movie != null && (filter == null || filter.test(movie)))
+                        .limit(k)
+                        .collect(Collectors.toList());
+            }
+            Comparator<Movie> order = field.comparator(descending);
+            return collect(snapshot, filter, () -> new BoundedHeap(order, k), BoundedHeap::add,
+                    heap -> heap, BoundedHeap::merge).toList();
+        }
+    }
+
+    /**
+     * подсчитать итоги числовых полей по группам фильмов за один проход по снимку
+     *
+     * @param filter   условие отбора или null
+     * @param groupBy  признак группировки или null для одной группы
+     * @param measures числовые поля
+     * @return таблица итогов
+     */
+    public AggregateTable aggregate(MoviePredicate filter, GroupKey groupBy, List<MovieField> measures) {
+        List<String> names = measures.stream().map(field -> field.toString().toLowerCase()).collect(Collectors.toList());
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            return collect(snapshot, filter, () -> new AggregateTable.Accumulator(names),
+                    (accumulator, movie) -> {
+                        double[] values = new double[measures.size()];
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = ((Number) measures.get(i).get(movie)).doubleValue();
+                        }
+                        accumulator.add(groupBy != null ? groupBy.of(movie) : null, values);
+                    },
+                    accumulator -> accumulator, AggregateTable.Accumulator::merge).toTable();
+        }
+    }
+
+    /**
+     * построить индексы времени по всей коллекции: куски коллекции сортируются
+     * параллельно в {@link ParallelScanner}, затем отсортированные куски сливаются
+     */
+    private void rebuildTimeIndexes() {
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            for (TimeField field : TimeField.values()) {
+                timeIndex.get(field).reset(scanner.collect(snapshot.spliterator(), movies.size(), TimeIndex.Run::new,
+                        (run, movie) -> run.add(field.get(movie), movie.getId()), TimeIndex.Run::sort, TimeIndex.Run::merge));
+            }
+        }
+    }
+
+    /**
+     * получить страницу фильмов, значение поля со временем которых лежит в диапазоне,
+     * в порядке времени по индексу времени
+     *
+     * @param field      поле со временем
+     * @param from       начало диапазона включительно
+     * @param to         конец диапазона включительно
+     * @param descending True-от поздних к ранним, False-от ранних к поздним
+     * @param offset     количество пропускаемых фильмов
+     * @param limit      размер страницы, 0 - без ограничения
+     * @return фильмы страницы
+     */
+    public List<Movie> dateRange(TimeField field, long from, long to, boolean descending, int offset, int limit) {
+        List<Movie> result = new ArrayList<Movie>();
+        int[] skip = {offset};
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            timeIndex.get(field).range(from, to, descending, (key, id) -> {
+                Movie movie = snapshot.findById(id);
+                if (movie == null || field.get(movie) != key) {
+                    return true;
+                }
+                if (skip[0] > 0) {
+                    skip[0]--;
+                    return true;
+                }
+                result.add(movie);
+                return limit == 0 || result.size() < limit;
+            });
+        }
+        return result;
+    }
+
+    /**
+     * найти фильмы режиссера по индексу режиссеров
+     *
+     * @param key    номер паспорта или имя режиссера
+     * @param byName True-поиск по имени, False-по номеру паспорта
+     * @return фильмы в порядке индентификаторов
+     */
+    public List<Movie> findByDirector(String key, boolean byName) {
+        long[] ids = byName ? directorIndex.byName(key) : directorIndex.byPassport(key);
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            return Arrays.stream(ids)
+                    .sorted()
+                    .mapToObj(snapshot::findById)
+                    .filter(movie -> movie != null
+                            && key.equals(byName ? movie.getDirector().getName() : movie.getDirector().getPassportID()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * подсчитать фильмы каждого режиссера. Количество фильмов всех режиссеров берется
+     * из индекса режиссеров без чтения фильмов
+     *
+     * @param name имя режиссеров или null для всех режиссеров
+     * @return таблица количества фильмов по номеру паспорта режиссера
+     */
+    public AggregateTable countByDirector(String name) {
+        AggregateTable.Accumulator result = new AggregateTable.Accumulator(Collections.emptyList());
+        if (name == null) {
+            directorIndex.forEachPassport(result::addCount);
+        } else {
+            findByDirector(name, true).forEach(movie -> result.addCount(movie.getDirector().getPassportID(), 1));
+        }
+        return result.toTable();
+    }
+
+    /**
+     * найти фильмы, точки которых лежат в прямоугольнике. Кандидаты берутся из пространственного
+     * индекса последней версии и проверяются по снимку
+     *
+     * @param target точки фильма
+     * @param minX   левая граница включительно
+     * @param minY   нижняя граница включительно
+     * @param maxX   правая граница включительно
+     * @param maxY   верхняя граница включительно
+     * @return фильмы в порядке индентификаторов
+     */
+    public List<Movie> withinBox(SpatialTarget target, double minX, double minY, double maxX, double maxY) {
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            return Arrays.stream(spatialIndex.get(target).within(minX, minY, maxX, maxY))
+                    .sorted()
+                    .mapToObj(snapshot::findById)
+                    .filter(movie -> movie != null
+                            && target.x(movie) >= minX && target.x(movie) <= maxX
+                            && target.y(movie) >= minY && target.y(movie) <= maxY)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * найти k фильмов, точки которых ближе всего к заданной
+     *
+     * @param target точки фильма
+     * @param x      координата x заданной точки
+     * @param y      координата y заданной точки
+     * @param k      количество фильмов
+     * @return не больше k фильмов в порядке возрастания расстояния
+     */
+    public List<Movie> nearest(SpatialTarget target, double x, double y, int k) {
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            List<Movie> result = Arrays.stream(spatialIndex.get(target).nearest(x, y, k))
+                    .mapToObj(snapshot::findById)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            result.sort(target.distance(x, y));
+            return result;
         }
-        return false;
     }
 
     /**
@@ -198,12 +1100,8 @@ public class MoviesDB {
      * @return индентификатор фильма
      */
     public Movie maxByName() {
-        try {
-            Long id = nameIndex.get(nameIndex.lastKey());
-            return findById(id);
-        } catch(NoSuchElementException e) {
-            return null;
-        }
+        Map.Entry<String, Long> last = nameIndex.lastEntry();
+        return last != null ? findById(last.getValue()) : null;
     }
 
     /**
@@ -213,13 +1111,37 @@ public class MoviesDB {
      * @return колличество удаленных элементов
      */
     public int removeLowerKey(String key) {
-        nameIndex.keySet().stream()
-                .filter(item -> item.compareTo(key) < 0)
+        nameIndex.range(null, key)
+                .map(Map.Entry::getKey)
                 .collect(Collectors.toList())
                 .forEach(this::remove);
         return 1;
     }
 
+    /**
+     * отобрать фильмы снимка. Если включено поколоночное представление и оно соответствует
+     * версии снимка, условие проверяется по колонкам, а объекты фильмов получаются
+     * только для отобранных строк, иначе фильмы снимка просматриваются {@link ParallelScanner}
+     *
+     * @param snapshot  снимок коллекции
+     * @param rowFilter условие отбора по колонкам
+     * @param filter    то же условие для объекта фильма
+     * @param order     порядок результата или null, если порядок не важен
+     * @return отобранные фильмы
+     */
+    private List<Movie> scan(MoviesSnapshot snapshot, MovieColumns.RowFilter rowFilter, Predicate<Movie> filter,
+                             Comparator<Movie> order) {
+        long[] ids = columns != null ? columns.scan(snapshot.getVersion(), rowFilter) : null;
+        if (ids == null) {
+            return scanner.filterSorted(snapshot.spliterator(), movies.size(), filter, order);
+        }
+        List<Movie> result = Arrays.stream(ids).mapToObj(snapshot::findById).filter(Objects::nonNull).collect(Collectors.toList());
+        if (order != null) {
+            result.sort(order);
+        }
+        return result;
+    }
+
     /**
      * вывести элементы, значение поля name которых содержит заданную подстроку
      *
@@ -227,13 +1149,13 @@ public class MoviesDB {
      * @return отфильтрованный список
      */
     public List<Movie> filterByName(String key) {
-        return nameIndex.keySet().stream()
-                .filter(item -> item.toUpperCase().contains(key.toUpperCase()))
-                .collect(Collectors.toMap(Function.identity(), nameIndex::get))
-                .values().stream()
-                .filter(movies::containsKey)
-                .collect(Collectors.toMap(Function.identity(), movies::get)).values()
-                .stream().sorted().collect(Collectors.toList());
+        String upperKey = key.toUpperCase();
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            return scan(snapshot,
+                    (columns, row) -> columns.name(row).toUpperCase().contains(upperKey),
+                    item -> item.getName().toUpperCase().contains(upperKey),
+                    Comparator.naturalOrder());
+        }
     }
 
     /**
@@ -243,24 +1165,44 @@ public class MoviesDB {
      * @return отфильтрованный список
      */
     public List<Movie> filterByGenre(MovieGenre genre) {
-        return movies.values().stream()
-                .filter(item -> item.getGenre() == genre)
-                .sorted()
-                .collect(Collectors.toList());
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            int ordinal = genre != null ? genre.ordinal() : -1;
+            return scan(snapshot,
+                    (columns, row) -> columns.genre(row) == ordinal,
+                    item -> item.getGenre() == genre,
+                    Comparator.naturalOrder());
+        }
     }
 
     /**
-     * удалить из коллекции все элементы, меньшие, чем заданный
+     * удалить из коллекции все элементы, меньшие, чем заданный.
+     * Просмотр коллекции выполняется на снимке и не блокирует запись
      *
      * @param movie заданный элемент
      * @return колличество удаленных
      */
     public int removeLower(Movie movie) {
-        movies.values().stream()
-                .filter(item -> item.compareTo(movie) < 0)
-                .map(Movie::getName)
-                .collect(Collectors.toList())
-                .forEach(this::remove);
+        List<Movie> lower;
+        try (MoviesSnapshot snapshot = openSnapshot()) {
+            String name = movie.getName();
+            lower = scan(snapshot,
+                    (columns, row) -> name == null || columns.name(row).compareTo(name) < 0,
+                    item -> item.compareTo(movie) < 0,
+                    null);
+        }
+        for (Movie item : lower) {
+            writeLock.lock();
+            try {
+                Movie current = findById(item.getId());
+                if (current != null && current.compareTo(movie) < 0) {
+                    long next = version + 1;
+                    commit(next, item.getId(), null);
+                    publish(next);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
         return 1;
     }
 
@@ -275,20 +1217,122 @@ public class MoviesDB {
         if (key == null) {
             return false;
         }
-        Long id = nameIndex.get(key);
-        Movie old = movies.get(id);
-        if (old != null && old.compareTo(movie) <= 0) {
-            movie.setId(id);
-            movie.setCreationDate(LocalDate.now());
-            update(id, movie);
-            return true;
+        writeLock.lock();
+        try {
+            Long id = nameIndex.get(key);
+            Movie old = findById(id);
+            if (old != null && old.compareTo(movie) <= 0) {
+                movie.setId(id);
+                movie.setCreationDate(LocalDate.now());
+                update(id, movie);
+                return true;
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * заменить значение по ключу, если новое значение больше старого и версия записи не изменилась
+     *
+     * @param key             заданный ключ
+     * @param movie           заданное значение
+     * @param expectedVersion версия записи, прочитанная клиентом
+     * @return True-если заменил,False-если не заменил
+     * @throws VersionConflictException версия записи отличается от ожидаемой
+     */
+    public boolean replaceIfGreater(String key, Movie movie, long expectedVersion) throws VersionConflictException {
+        writeLock.lock();
+        try {
+            checkVersion(key != null ? nameIndex.get(key) : null, expectedVersion);
+            return replaceIfGreater(key, movie);
+        } finally {
+            writeLock.unlock();
         }
-        return false;
     }
 
     private final Path source;
-    private final LinkedHashMap<Long, Movie> movies;
-    private final TreeMap<String, Long> nameIndex;
+    private final LongHashMap<MovieVersion> movies;
+    private final NameDictionary nameIndex;
+    private final ConcurrentSkipListSet<SizeKey> sizeIndex;
+    private final DirectorIndex directorIndex;
+    private final EnumMap<TimeField, TimeIndex> timeIndex;
+    private boolean loading = false;
+    private final EnumMap<SpatialTarget, SpatialGrid> spatialIndex;
+    private final MovieColumns columns;
+    private final OffHeapStore store;
+    private final Canonicalizer canonicalizer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final TreeMap<Long, Integer> pins = new TreeMap<Long, Integer>();
+    private final ArrayDeque<Garbage> garbage = new ArrayDeque<Garbage>();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+    private final ArrayList<Change> changes = new ArrayList<Change>();
+    private final EventSequence events;
+    private final AtomicLong idSequence;
+    private final boolean keepIds;
+    private volatile long savedVersion = -1;
+
+    /**
+     * Получатель элементов индекса размеров
+     */
+    interface SizeIndexConsumer {
+        void accept(long id, long version);
+    }
+
+    /**
+     * Ключ индекса размеров: размер сериализованного фильма, его индентификатор и версия записи
+     */
+    private static final class SizeKey implements Comparable<SizeKey> {
+        private final int size;
+        private final long id;
+        private final long version;
+
+        SizeKey(int size, long id, long version) {
+            this.size = size;
+            this.id = id;
+            this.version = version;
+        }
+
+        @Override
+        public int compareTo(SizeKey other) {
+            int result = Integer.compare(size, other.size);
+            if (result == 0) {
+                result = Long.compare(id, other.id);
+            }
+            return result != 0 ? result : Long.compare(version, other.version);
+        }
+    }
+
+    /**
+     * Запись о цепочке, в которой после изменения появились версии, нужные только старым снимкам
+     */
+    private static final class Garbage {
+        private final long id;
+        private final long version;
+
+        Garbage(long id, long version) {
+            this.id = id;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Изменение, ожидающее публикации версии, и значение фильма до изменения
+     */
+    private static final class Change {
+        private final ChangeEvent.Type type;
+        private final long id;
+        private final Movie movie;
+        private final Movie previous;
+
+        Change(ChangeEvent.Type type, long id, Movie movie, Movie previous) {
+            this.type = type;
+            this.id = id;
+            this.movie = movie;
+            this.previous = previous;
+        }
+    }
 
 
    /* private Movie test;
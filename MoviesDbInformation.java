@@ -11,12 +11,25 @@ public class MoviesDbInformation implements Serializable {
     private LocalDateTime init_time;
     private int elements_count;
     private Long max_id;
+    /**
+     * Оценка памяти, сэкономленной заменой повторяющихся частей фильмов общими экземплярами
+     */
+    private long dedup_saved_bytes;
+    /**
+     * Состояние копии коллекции на сервере-последователе или null на основном сервере
+     */
+    private String replication;
 
     public MoviesDbInformation(String collection_type, LocalDateTime init_time, int elements_count, Long max_id) {
+        this(collection_type, init_time, elements_count, max_id, 0);
+    }
+
+    public MoviesDbInformation(String collection_type, LocalDateTime init_time, int elements_count, Long max_id, long dedup_saved_bytes) {
         this.collection_type = collection_type;
         this.init_time = init_time;
         this.elements_count = elements_count;
         this.max_id = max_id;
+        this.dedup_saved_bytes = dedup_saved_bytes;
     }
 
     public String getCollection_type() {
@@ -34,4 +47,16 @@ public class MoviesDbInformation implements Serializable {
     public Long getMax_id() {
         return max_id;
     }
+
+    public long getDedup_saved_bytes() {
+        return dedup_saved_bytes;
+    }
+
+    public String getReplication() {
+        return replication;
+    }
+
+    public void setReplication(String replication) {
+        this.replication = replication;
+    }
 }
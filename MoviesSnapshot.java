@@ -0,0 +1,107 @@
+package org.dima.server;
+
+import org.dima.movies.Movie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+
+/**
+ * Снимок коллекции на определенной версии.
+ * Пока снимок открыт, версии записей, которые он видит, не удаляются,
+ * поэтому длинный просмотр коллекции не блокирует запись и не видит частично примененных изменений
+ */
+public class MoviesSnapshot implements AutoCloseable {
+    private final MoviesDB db;
+    private final long version;
+    private boolean closed = false;
+
+    MoviesSnapshot(MoviesDB db, long version) {
+        this.db = db;
+        this.version = version;
+    }
+
+    /**
+     * Функция получения версии коллекции, на которой сделан снимок
+     * @return версия коллекции
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * найти фильм по индентификатору
+     * @param id индентификатор
+     * @return фильм или null если его нет в снимке
+     */
+    public Movie findById(Long id) {
+        return id != null ? findById(id.longValue()) : null;
+    }
+
+    /**
+     * найти фильм по индентификатору без упаковки ключа
+     * @param id индентификатор
+     * @return фильм или null если его нет в снимке
+     */
+    public Movie findById(long id) {
+        return visibleMovie(db.chain(id));
+    }
+
+    /**
+     * фильмы снимка в порядке добавления
+     * @return поток фильмов
+     */
+    public Stream<Movie> movies() {
+        return db.chains().map(this::visibleMovie).filter(Objects::nonNull);
+    }
+
+    /**
+     * фильмы снимка для просмотра по частям. Поток помечается параллельным только для того,
+     * чтобы его разделитель поддерживал {@link Spliterator#trySplit()}: элементы выбирает
+     * тот поток, который обходит полученную часть
+     * @return разделитель фильмов
+     */
+    Spliterator<Movie> spliterator() {
+        return movies().parallel().spliterator();
+    }
+
+    /**
+     * фильмы снимка в порядке возрастания размера сериализованного объекта
+     * @return список фильмов
+     */
+    public List<Movie> moviesBySize() {
+        List<Movie> result = new ArrayList<Movie>();
+        db.forEachBySize((id, recordVersion) -> {
+            MovieVersion visible = visible(db.chain(id));
+            if (visible != null && visible.version == recordVersion) {
+                Movie movie = visible.movie();
+                if (movie != null) {
+                    result.add(movie);
+                }
+            }
+        });
+        return result;
+    }
+
+    MovieVersion visible(MovieVersion head) {
+        return head != null ? head.visibleAt(version) : null;
+    }
+
+    private Movie visibleMovie(MovieVersion head) {
+        MovieVersion visible = visible(head);
+        return visible != null ? visible.movie() : null;
+    }
+
+    /**
+     * Освобождение снимка
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            db.release(version);
+        }
+    }
+}
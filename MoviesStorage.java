@@ -0,0 +1,94 @@
+package org.dima.server;
+
+import org.dima.commands.ChangeEvent;
+import org.dima.commands.GroupKey;
+import org.dima.commands.MovieField;
+import org.dima.commands.MoviePredicate;
+import org.dima.commands.SpatialTarget;
+import org.dima.commands.TimeField;
+import org.dima.movies.AggregateTable;
+import org.dima.movies.CollectionSnapshot;
+import org.dima.movies.Movie;
+import org.dima.movies.MovieGenre;
+import org.dima.movies.MoviesDbInformation;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Интерфейс хранилища коллекции фильмов, с которым работает сервер
+ */
+public interface MoviesStorage extends AutoCloseable {
+    void save() throws Exception;
+
+    List<Movie> getMoviesBySize();
+
+    Comparator<Movie> sizeComparator();
+
+    MoviesDbInformation getInformation();
+
+    long getVersion();
+
+    void addChangeListener(ChangeListener listener);
+
+    void removeChangeListener(ChangeListener listener);
+
+    CollectionSnapshot snapshot();
+
+    void replace(List<Movie> movies);
+
+    void apply(ChangeEvent event);
+
+    void insert(Movie movie) throws IllegalArgumentException;
+
+    Movie findById(Long id);
+
+    Long findByName(String name);
+
+    void update(Long id, Movie movie) throws IllegalArgumentException;
+
+    void update(Long id, Movie movie, long expectedVersion) throws IllegalArgumentException, VersionConflictException;
+
+    boolean remove(String key);
+
+    boolean remove(String key, long expectedVersion) throws VersionConflictException;
+
+    void clear();
+
+    Movie maxByName();
+
+    int removeLowerKey(String key);
+
+    List<Movie> filterByName(String key);
+
+    List<Movie> filterByGenre(MovieGenre genre);
+
+    int removeLower(Movie movie);
+
+    boolean replaceIfGreater(String key, Movie movie);
+
+    boolean replaceIfGreater(String key, Movie movie, long expectedVersion) throws VersionConflictException;
+
+    List<Movie> query(MoviePredicate filter, Comparator<Movie> order, int limit);
+
+    List<Movie> topK(MoviePredicate filter, MovieField field, boolean descending, int k);
+
+    AggregateTable aggregate(MoviePredicate filter, GroupKey groupBy, List<MovieField> measures);
+
+    List<Movie> dateRange(TimeField field, long from, long to, boolean descending, int offset, int limit);
+
+    List<Movie> findByDirector(String key, boolean byName);
+
+    AggregateTable countByDirector(String name);
+
+    List<Movie> withinBox(SpatialTarget target, double minX, double minY, double maxX, double maxY);
+
+    List<Movie> nearest(SpatialTarget target, double x, double y, int k);
+
+    /**
+     * освободить ресурсы хранилища (память вне кучи и фоновое уплотнение),
+     * после закрытия хранилищем пользоваться нельзя
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,538 @@
+package org.dima.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Компактный упорядоченный словарь строка - long.
+ * Основная часть словаря - неизменяемый сегмент, в котором строки хранятся блоками
+ * с фронтальным сжатием: первая строка блока записана целиком, каждая следующая -
+ * длиной общего с предыдущей строкой префикса и оставшимся суффиксом.
+ * Изменения накапливаются в небольшом дереве поверх сегмента (удаление записывается меткой)
+ * и сливаются с сегментом в новый сегмент, когда дерево вырастает.
+ * Изменять словарь может только один поток, читать - любое количество потоков без блокировок:
+ * сегмент и дерево изменений публикуются вместе через volatile поле
+ */
+public class NameDictionary {
+    private static final int BLOCK_SIZE = 16;
+    private static final int MIN_DELTA = 1024;
+    /**
+     * метка удаления в дереве изменений: значение, которое не может быть индентификатором
+     */
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private volatile State state = new State(Segment.EMPTY);
+    private int deltaSize = 0;
+
+    /**
+     * Сегмент и дерево изменений поверх него
+     */
+    private static final class State {
+        final Segment segment;
+        final ConcurrentSkipListMap<String, Long> delta = new ConcurrentSkipListMap<String, Long>();
+
+        State(Segment segment) {
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * получить значение по строке
+     * @param name строка
+     * @return значение или null
+     */
+    public Long get(String name) {
+        State s = state;
+        Long value = s.delta.get(name);
+        if (value != null) {
+            return value != REMOVED ? value : null;
+        }
+        return s.segment.get(name);
+    }
+
+    /**
+     * записать значение для строки
+     * @param name строка
+     * @param value значение, кроме Long.MIN_VALUE
+     */
+    public void put(String name, long value) {
+        if (state.delta.put(name, value) == null) {
+            deltaSize++;
+        }
+        mergeIfNeeded();
+    }
+
+    /**
+     * удалить строку, если ей соответствует заданное значение
+     * @param name строка
+     * @param value значение
+     * @return True-если удалил
+     */
+    public boolean remove(String name, long value) {
+        Long current = get(name);
+        if (current == null || current != value) {
+            return false;
+        }
+        State s = state;
+        if (s.segment.get(name) != null) {
+            if (s.delta.put(name, REMOVED) == null) {
+                deltaSize++;
+            }
+        } else if (s.delta.remove(name) != null) {
+            deltaSize--;
+        }
+        mergeIfNeeded();
+        return true;
+    }
+
+    /**
+     * удалить все строки
+     */
+    public void clear() {
+        state = new State(Segment.EMPTY);
+        deltaSize = 0;
+    }
+
+    /**
+     * наибольшая строка словаря
+     * @return пара строка - значение или null, если словарь пуст
+     */
+    public Map.Entry<String, Long> lastEntry() {
+        return first(descending(null));
+    }
+
+    /**
+     * наибольшая строка, не превосходящая заданную
+     * @param name строка
+     * @return пара строка - значение или null
+     */
+    public Map.Entry<String, Long> floorEntry(String name) {
+        return first(descending(name));
+    }
+
+    /**
+     * наименьшая строка, не меньшая заданной
+     * @param name строка
+     * @return пара строка - значение или null
+     */
+    public Map.Entry<String, Long> ceilingEntry(String name) {
+        return first(ascending(name));
+    }
+
+    /**
+     * строки из полуинтервала [from, to) по возрастанию
+     * @param from нижняя граница включительно или null
+     * @param to верхняя граница не включительно или null
+     * @return поток пар строка - значение
+     */
+    public Stream<Map.Entry<String, Long>> range(String from, String to) {
+        return stream(ascending(from), name -> to == null || name.compareTo(to) < 0);
+    }
+
+    /**
+     * все строки по убыванию
+     * @return поток пар строка - значение
+     */
+    public Stream<Map.Entry<String, Long>> descendingEntries() {
+        return stream(descending(null), name -> true);
+    }
+
+    /**
+     * строки с заданным префиксом по возрастанию
+     * @param prefix префикс
+     * @return поток пар строка - значение
+     */
+    public Stream<Map.Entry<String, Long>> prefix(String prefix) {
+        return stream(ascending(prefix), name -> name.startsWith(prefix));
+    }
+
+    /**
+     * поток пар до первой строки, не удовлетворяющей условию
+     * @param iterator пары в порядке строк
+     * @param inRange условие на строку
+     * @return поток пар
+     */
+    private static Stream<Map.Entry<String, Long>> stream(Iterator<Map.Entry<String, Long>> iterator, Predicate<String> inRange) {
+        Iterator<Map.Entry<String, Long>> bounded = new Iterator<Map.Entry<String, Long>>() {
+            private Map.Entry<String, Long> next = advance();
+
+            private Map.Entry<String, Long> advance() {
+                if (iterator.hasNext()) {
+                    Map.Entry<String, Long> entry = iterator.next();
+                    if (inRange.test(entry.getKey())) {
+                        return entry;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, Long> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, Long> result = next;
+                next = advance();
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(bounded,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    private static Map.Entry<String, Long> first(Iterator<Map.Entry<String, Long>> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * пары по возрастанию строк
+     * @param from первая строка включительно или null
+     * @return итератор пар
+     */
+    private Iterator<Map.Entry<String, Long>> ascending(String from) {
+        State s = state;
+        Segment segment = s.segment;
+        int index = 0;
+        Map<String, Long> delta = s.delta;
+        if (from != null) {
+            index = segment.lowerBound(from);
+            delta = s.delta.tailMap(from, true);
+        }
+        return new Merge(new Cursor(segment, index, 1), delta.entrySet().iterator(), false);
+    }
+
+    /**
+     * пары по убыванию строк
+     * @param from первая строка включительно или null
+     * @return итератор пар
+     */
+    private Iterator<Map.Entry<String, Long>> descending(String from) {
+        State s = state;
+        Segment segment = s.segment;
+        int index = segment.size() - 1;
+        Map<String, Long> delta = s.delta.descendingMap();
+        if (from != null) {
+            index = segment.lowerBound(from);
+            if (index < segment.size() && segment.name(index).equals(from)) {
+                index++;
+            }
+            index--;
+            delta = s.delta.headMap(from, true).descendingMap();
+        }
+        return new Merge(new Cursor(segment, index, -1), delta.entrySet().iterator(), true);
+    }
+
+    /**
+     * слить дерево изменений с сегментом, если дерево стало больше восьмой части сегмента
+     */
+    private void mergeIfNeeded() {
+        State s = state;
+        if (deltaSize > Math.max(MIN_DELTA, s.segment.size() / 8)) {
+            state = new State(Segment.build(ascending(null)));
+            deltaSize = 0;
+        }
+    }
+
+    /**
+     * Неизменяемый сегмент словаря с фронтальным сжатием строк.
+     * Символы строк записываются числами переменной длины, поэтому строка из символов ASCII
+     * занимает по байту на символ, а порядок строк совпадает с {@link String#compareTo}
+     */
+    private static final class Segment {
+        static final Segment EMPTY = new Segment(new byte[0], new int[0], new long[0]);
+
+        private final byte[] data;
+        private final int[] blocks;
+        private final long[] values;
+
+        private Segment(byte[] data, int[] blocks, long[] values) {
+            this.data = data;
+            this.blocks = blocks;
+            this.values = values;
+        }
+
+        /**
+         * построить сегмент
+         * @param entries пары строка - значение по возрастанию строк
+         * @return сегмент
+         */
+        static Segment build(Iterator<Map.Entry<String, Long>> entries) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int[] blocks = new int[16];
+            long[] values = new long[16];
+            int count = 0;
+            String previous = "";
+            while (entries.hasNext()) {
+                Map.Entry<String, Long> entry = entries.next();
+                String name = entry.getKey();
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                values[count] = entry.getValue();
+                int shared = 0;
+                if (count % BLOCK_SIZE == 0) {
+                    int block = count / BLOCK_SIZE;
+                    if (block == blocks.length) {
+                        blocks = Arrays.copyOf(blocks, block * 2);
+                    }
+                    blocks[block] = out.size();
+                } else {
+                    int limit = Math.min(previous.length(), name.length());
+                    while (shared < limit && previous.charAt(shared) == name.charAt(shared)) {
+                        shared++;
+                    }
+                    writeVarInt(out, shared);
+                }
+                writeVarInt(out, name.length() - shared);
+                for (int i = shared; i < name.length(); i++) {
+                    writeVarInt(out, name.charAt(i));
+                }
+                previous = name;
+                count++;
+            }
+            int blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return new Segment(out.toByteArray(), Arrays.copyOf(blocks, blockCount), Arrays.copyOf(values, count));
+        }
+
+        int size() {
+            return values.length;
+        }
+
+        long value(int index) {
+            return values[index];
+        }
+
+        String name(int index) {
+            return block(index / BLOCK_SIZE)[index % BLOCK_SIZE];
+        }
+
+        Long get(String name) {
+            int block = findBlock(name);
+            if (block < 0) {
+                return null;
+            }
+            String[] names = block(block);
+            for (int i = 0; i < names.length; i++) {
+                int cmp = names[i].compareTo(name);
+                if (cmp == 0) {
+                    return values[block * BLOCK_SIZE + i];
+                }
+                if (cmp > 0) {
+                    break;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * найти первую строку, не меньшую заданной
+         * @param name строка
+         * @return номер строки или size(), если таких строк нет
+         */
+        int lowerBound(String name) {
+            int block = findBlock(name);
+            if (block < 0) {
+                return 0;
+            }
+            String[] names = block(block);
+            int i = 0;
+            while (i < names.length && names[i].compareTo(name) < 0) {
+                i++;
+            }
+            return block * BLOCK_SIZE + i;
+        }
+
+        /**
+         * найти последний блок, первая строка которого не больше заданной
+         * @param name строка
+         * @return номер блока или -1
+         */
+        private int findBlock(String name) {
+            int low = 0;
+            int high = blocks.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (firstName(middle).compareTo(name) <= 0) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found;
+        }
+
+        private String firstName(int block) {
+            int[] position = {blocks[block]};
+            char[] chars = new char[readVarInt(data, position)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) readVarInt(data, position);
+            }
+            return new String(chars);
+        }
+
+        /**
+         * раскодировать все строки блока
+         * @param block номер блока
+         * @return строки блока
+         */
+        String[] block(int block) {
+            int count = Math.min(BLOCK_SIZE, values.length - block * BLOCK_SIZE);
+            String[] names = new String[count];
+            int[] position = {blocks[block]};
+            char[] previous = new char[0];
+            for (int n = 0; n < count; n++) {
+                int shared = n == 0 ? 0 : readVarInt(data, position);
+                char[] chars = Arrays.copyOf(previous, shared + readVarInt(data, position));
+                for (int i = shared; i < chars.length; i++) {
+                    chars[i] = (char) readVarInt(data, position);
+                }
+                names[n] = new String(chars);
+                previous = chars;
+            }
+            return names;
+        }
+
+        private static void writeVarInt(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private static int readVarInt(byte[] data, int[] position) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position[0]++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Позиция в сегменте с раскодированным текущим блоком
+     */
+    private static final class Cursor {
+        private final Segment segment;
+        private final int step;
+        private int index;
+        private int blockNumber = -1;
+        private String[] names;
+
+        Cursor(Segment segment, int index, int step) {
+            this.segment = segment;
+            this.index = index;
+            this.step = step;
+        }
+
+        boolean valid() {
+            return index >= 0 && index < segment.size();
+        }
+
+        String name() {
+            int block = index / BLOCK_SIZE;
+            if (block != blockNumber) {
+                names = segment.block(block);
+                blockNumber = block;
+            }
+            return names[index % BLOCK_SIZE];
+        }
+
+        long value() {
+            return segment.value(index);
+        }
+
+        void next() {
+            index += step;
+        }
+    }
+
+    /**
+     * Слияние сегмента с деревом изменений: запись дерева заменяет строку сегмента,
+     * строки с меткой удаления пропускаются
+     */
+    private static final class Merge implements Iterator<Map.Entry<String, Long>> {
+        private final Cursor cursor;
+        private final Iterator<Map.Entry<String, Long>> delta;
+        private final boolean descending;
+        private Map.Entry<String, Long> pending;
+        private Map.Entry<String, Long> next;
+
+        Merge(Cursor cursor, Iterator<Map.Entry<String, Long>> delta, boolean descending) {
+            this.cursor = cursor;
+            this.delta = delta;
+            this.descending = descending;
+            advance();
+        }
+
+        private void advance() {
+            while (true) {
+                if (pending == null && delta.hasNext()) {
+                    pending = delta.next();
+                }
+                String name = cursor.valid() ? cursor.name() : null;
+                if (name == null && pending == null) {
+                    next = null;
+                    return;
+                }
+                int cmp;
+                if (name == null) {
+                    cmp = 1;
+                } else if (pending == null) {
+                    cmp = -1;
+                } else {
+                    cmp = descending ? pending.getKey().compareTo(name) : name.compareTo(pending.getKey());
+                }
+                if (cmp < 0) {
+                    next = new AbstractMap.SimpleImmutableEntry<String, Long>(name, cursor.value());
+                    cursor.next();
+                    return;
+                }
+                Map.Entry<String, Long> entry = pending;
+                pending = null;
+                if (cmp == 0) {
+                    cursor.next();
+                }
+                if (entry.getValue() != REMOVED) {
+                    next = entry;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, Long> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, Long> result = next;
+            advance();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.dima.client;
+
+import org.dima.movies.Movie;
+import org.dima.tools.MovieCodec;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ограниченный кэш фильмов на стороне клиента с вытеснением давно не использованных записей.
+ * Записи хранятся в компактном двоичном виде, поэтому каждое чтение получает свою копию фильма.
+ * Кэш очищается событиями изменения от сервера; каждое сбрасывание увеличивает номер эпохи,
+ * и ответ, запрошенный до сбрасывания, в кэш уже не попадает. Пока канал событий закрыт,
+ * кэш не используется
+ */
+public class NearCache {
+    private final int capacity;
+    private final LinkedHashMap<Long, Entry> byId;
+    private final Map<String, Long> byName = new HashMap<String, Long>();
+    private long epoch = 0;
+    private boolean open = true;
+    private long hits = 0;
+    private long misses = 0;
+    private long invalidations = 0;
+    private long evictions = 0;
+
+    /**
+     * Запись кэша
+     */
+    private static final class Entry {
+        final String name;
+        final byte[] data;
+
+        Entry(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Конструктор кэша
+     * @param capacity наибольшее количество фильмов
+     */
+    public NearCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Near cache capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.byId = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > NearCache.this.capacity) {
+                    byName.remove(eldest.getValue().name);
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * найти фильм по индентификатору
+     * @param id индентификатор
+     * @return копия фильма или null
+     */
+    synchronized Movie get(long id) {
+        Entry entry = open ? byId.get(id) : null;
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return MovieCodec.decode(entry.data);
+    }
+
+    /**
+     * найти фильм по названию
+     * @param name название
+     * @return копия фильма или null
+     */
+    synchronized Movie get(String name) {
+        Long id = open ? byName.get(name) : null;
+        Entry entry = id != null ? byId.get(id) : null;
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return MovieCodec.decode(entry.data);
+    }
+
+    /**
+     * Функция получения номера эпохи, запоминается перед запросом к серверу
+     * @return номер эпохи
+     */
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * запомнить фильм, полученный от сервера
+     * @param movie фильм
+     * @param epoch номер эпохи перед запросом
+     */
+    synchronized void put(Movie movie, long epoch) {
+        if (!open || epoch != this.epoch || movie == null || movie.getId() == null) {
+            return;
+        }
+        Entry previous = byId.put(movie.getId(), new Entry(movie.getName(), MovieCodec.encode(movie)));
+        if (previous != null && !previous.name.equals(movie.getName())) {
+            byName.remove(previous.name);
+        }
+        byName.put(movie.getName(), movie.getId());
+    }
+
+    /**
+     * сбросить фильм по индентификатору
+     * @param id индентификатор
+     */
+    synchronized void invalidate(long id) {
+        epoch++;
+        invalidations++;
+        Entry entry = byId.remove(id);
+        if (entry != null) {
+            byName.remove(entry.name);
+        }
+    }
+
+    /**
+     * сбросить фильм по названию
+     * @param name название
+     */
+    synchronized void invalidate(String name) {
+        epoch++;
+        invalidations++;
+        Long id = byName.remove(name);
+        if (id != null) {
+            byId.remove(id);
+        }
+    }
+
+    /**
+     * сбросить все фильмы
+     */
+    synchronized void clear() {
+        epoch++;
+        invalidations++;
+        byId.clear();
+        byName.clear();
+    }
+
+    /**
+     * сбросить все фильмы и больше не использовать кэш, вызывается при закрытии канала событий
+     */
+    synchronized void close() {
+        clear();
+        open = false;
+    }
+
+    /**
+     * Функция получения количества попаданий
+     * @return количество чтений из кэша
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Функция получения количества промахов
+     * @return количество чтений с сервера
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Функция получения доли попаданий
+     * @return доля чтений из кэша от 0 до 1
+     */
+    public synchronized double getHitRate() {
+        return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+    }
+
+    /**
+     * Функция получения количества сбрасываний
+     * @return количество сбрасываний по событиям сервера и изменениям этого клиента
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Функция получения количества вытеснений
+     * @return количество фильмов, вытесненных из-за ограничения размера
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return byId.size() + "/" + capacity + " movies" + (open ? "" : " (closed)")
+                + ", hits " + hits + ", misses " + misses
+                + String.format(", hit rate %.1f%%", getHitRate() * 100)
+                + ", invalidations " + invalidations + ", evictions " + evictions;
+    }
+}
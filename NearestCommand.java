@@ -0,0 +1,88 @@
+package org.dima.commands;
+
+import org.dima.movies.CanValidate;
+
+/**
+ * Класс для сериализации в поток команды Nearest - получения k фильмов,
+ * точки которых ближе всего к заданной
+ */
+public class NearestCommand extends MovieCommand implements CanValidate {
+    private final SpatialTarget target;
+    private final double x;
+    private final double y;
+    private final int k;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param target точки фильма, по которым выполняется поиск
+     * @param x координата x заданной точки
+     * @param y координата y заданной точки
+     * @param k количество фильмов
+     */
+    public NearestCommand(SpatialTarget target, double x, double y, int k) {
+        if (target == null) {
+            throw new IllegalArgumentException("Target is not set");
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        if (!Double.isFinite(x) || !Double.isFinite(y)) {
+            throw new IllegalArgumentException("Point must be finite");
+        }
+        this.target = target;
+        this.x = x;
+        this.y = y;
+        this.k = k;
+    }
+
+    /**
+     * Проверка параметров команды
+     * @return True-параметры допустимы
+     */
+    @Override
+    public boolean validate() {
+        return target != null && k > 0 && Double.isFinite(x) && Double.isFinite(y);
+    }
+
+    /**
+     * Функция получения значения поля target
+     * @return возвращает значение поля target
+     */
+    public SpatialTarget getTarget() {
+        return target;
+    }
+
+    /**
+     * Функция получения значения поля x
+     * @return возвращает значение поля x
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Функция получения значения поля y
+     * @return возвращает значение поля y
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Функция получения значения поля k
+     * @return возвращает значение поля k
+     */
+    public int getK() {
+        return k;
+    }
+
+    @Override
+    public String toString() {
+        return "NearestCommand{" +
+                "target=" + target +
+                ", x=" + x +
+                ", y=" + y +
+                ", k=" + k +
+                '}';
+    }
+}
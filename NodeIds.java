@@ -0,0 +1,58 @@
+package org.dima.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Индентификаторы фильмов, уникальные в пределах нескольких серверов.
+ * Младшие {@link #NODE_BITS} бит индентификатора - номер сервера, выделившего его,
+ * поэтому серверы выделяют индентификаторы независимо и без пересечений, а клиент
+ * по индентификатору находит сервер фильма. Номер сервера задает свойство movies.node,
+ * без него индентификаторы выделяются подряд, как на одиночном сервере
+ */
+public final class NodeIds {
+    /**
+     * количество бит номера сервера в индентификаторе
+     */
+    public static final int NODE_BITS = 10;
+
+    /**
+     * наибольшее количество серверов
+     */
+    public static final int MAX_NODES = 1 << NODE_BITS;
+
+    private static final int LOCAL_NODE = localNode();
+
+    private NodeIds() {
+    }
+
+    private static int localNode() {
+        int node = Integer.getInteger("movies.node", -1);
+        if (node >= MAX_NODES) {
+            throw new IllegalArgumentException("movies.node must be less than " + MAX_NODES + ": " + node);
+        }
+        return node;
+    }
+
+    /**
+     * выделить следующий индентификатор этого сервера
+     *
+     * @param sequence последний выделенный или загруженный индентификатор
+     * @return новый индентификатор, больший всех предыдущих
+     */
+    public static long next(AtomicLong sequence) {
+        if (LOCAL_NODE < 0) {
+            return sequence.incrementAndGet();
+        }
+        return sequence.updateAndGet(last -> (((last >> NODE_BITS) + 1) << NODE_BITS) | LOCAL_NODE);
+    }
+
+    /**
+     * Функция получения номера сервера, выделившего индентификатор
+     *
+     * @param id индентификатор
+     * @return номер сервера
+     */
+    public static int nodeOf(long id) {
+        return (int) (id & (MAX_NODES - 1));
+    }
+}
@@ -0,0 +1,203 @@
+package org.dima.server;
+
+import org.dima.movies.Movie;
+import org.dima.tools.MovieCodec;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Хранилище закодированных фильмов вне кучи Java.
+ * Записи размещаются подряд в прямых буферах (аренах), на каждую запись выдается
+ * дескриптор: номер арены в старших 32 битах и смещение в младших.
+ * Место удаленных записей освобождается уплотнением: живые записи разреженной арены
+ * переносятся в текущую арену, после чего разреженная арена отбрасывается.
+ * Размещение, освобождение и уплотнение выполняет владелец под своей блокировкой записи,
+ * чтение доступно из любого потока. Закрытое хранилище снимает уплотнение с расписания
+ * и отбрасывает арены
+ */
+final class OffHeapStore {
+    static final long NO_HANDLE = -1;
+
+    private static final ScheduledThreadPoolExecutor compactor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "off-heap-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // снятое с расписания уплотнение не должно удерживать хранилище до времени следующего запуска
+        compactor.setRemoveOnCancelPolicy(true);
+    }
+
+    private final int arenaSize;
+    private final Map<Integer, Arena> arenas = new ConcurrentHashMap<Integer, Arena>();
+    private int nextArenaId = 0;
+    private Arena current;
+    private ScheduledFuture<?> compaction;
+
+    /**
+     * Арена - прямой буфер с указателем свободного места и счетчиком освобожденных байт
+     */
+    private static final class Arena {
+        final int id;
+        final ByteBuffer buffer;
+        int top = 0;
+        long deadBytes = 0;
+
+        Arena(int id, int size) {
+            this.id = id;
+            this.buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /**
+     * Конструктор хранилища
+     * @param arenaSize размер арены в байтах
+     */
+    OffHeapStore(int arenaSize) {
+        this.arenaSize = arenaSize;
+        this.current = newArena(arenaSize);
+    }
+
+    /**
+     * запустить периодическое уплотнение в фоновом потоке
+     * @param compaction действие уплотнения владельца хранилища
+     * @param periodSeconds период запуска
+     */
+    void scheduleCompaction(Runnable compaction, long periodSeconds) {
+        this.compaction = compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compaction.run();
+            } catch (RuntimeException e) {
+                MoviesDB.logger.error("Off-heap compaction failed", e);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * снять уплотнение с расписания и отбросить арены. Вызывается владельцем
+     * под блокировкой записи, после закрытия размещать записи нельзя, чтение возвращает null
+     */
+    void close() {
+        if (compaction != null) {
+            compaction.cancel(false);
+            compaction = null;
+        }
+        arenas.clear();
+        current = null;
+    }
+
+    private Arena newArena(int size) {
+        Arena arena = new Arena(nextArenaId++, size);
+        arenas.put(arena.id, arena);
+        return arena;
+    }
+
+    /**
+     * разместить фильм
+     * @param movie фильм
+     * @return дескриптор записи
+     */
+    long allocate(Movie movie) {
+        return allocate(MovieCodec.encode(movie));
+    }
+
+    private long allocate(byte[] data) {
+        int length = data.length + Integer.BYTES;
+        if (current.buffer.capacity() - current.top < length) {
+            current = newArena(Math.max(arenaSize, length));
+        }
+        Arena arena = current;
+        int offset = arena.top;
+        ByteBuffer buffer = arena.buffer.duplicate();
+        buffer.position(offset);
+        buffer.putInt(data.length);
+        buffer.put(data);
+        arena.top += length;
+        return ((long) arena.id << 32) | offset;
+    }
+
+    /**
+     * прочитать фильм
+     * @param handle дескриптор записи
+     * @return фильм или null, если арена записи уже отброшена уплотнением
+     */
+    Movie read(long handle) {
+        byte[] data = bytes(handle);
+        return data != null ? MovieCodec.decode(data) : null;
+    }
+
+    private byte[] bytes(long handle) {
+        Arena arena = arenas.get((int) (handle >>> 32));
+        if (arena == null) {
+            return null;
+        }
+        int offset = (int) handle;
+        ByteBuffer buffer = arena.buffer.duplicate();
+        byte[] data = new byte[buffer.getInt(offset)];
+        buffer.position(offset + Integer.BYTES);
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * освободить запись
+     * @param handle дескриптор записи
+     */
+    void free(long handle) {
+        Arena arena = arenas.get((int) (handle >>> 32));
+        if (arena != null) {
+            arena.deadBytes += arena.buffer.getInt((int) handle) + Integer.BYTES;
+        }
+    }
+
+    /**
+     * найти арены, в которых освобождено больше половины места
+     * @return номера разреженных арен
+     */
+    Set<Integer> sparseArenas() {
+        Set<Integer> result = new HashSet<Integer>();
+        for (Arena arena : arenas.values()) {
+            if (arena != current && arena.deadBytes * 2 > arena.top) {
+                result.add(arena.id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * проверить, что запись находится в одной из заданных арен
+     * @param handle дескриптор записи
+     * @param arenaIds номера арен
+     * @return True-если находится
+     */
+    static boolean isIn(long handle, Set<Integer> arenaIds) {
+        return arenaIds.contains((int) (handle >>> 32));
+    }
+
+    /**
+     * перенести запись в текущую арену
+     * @param handle дескриптор записи
+     * @return новый дескриптор
+     */
+    long move(long handle) {
+        return allocate(bytes(handle));
+    }
+
+    /**
+     * отбросить арены после переноса из них всех живых записей
+     * @param arenaIds номера арен
+     */
+    void drop(Set<Integer> arenaIds) {
+        for (Integer id : arenaIds) {
+            arenas.remove(id);
+        }
+    }
+}
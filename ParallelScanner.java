@@ -0,0 +1,156 @@
+package org.dima.server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Параллельный просмотр коллекции в отдельном пуле ForkJoin.
+ * Источник делится через {@link Spliterator#trySplit()} на куски, каждый кусок обрабатывается
+ * своей задачей, результаты кусков сливаются в порядке кусков.
+ * Небольшие коллекции просматриваются последовательно в вызывающем потоке,
+ * потому что разделение на задачи стоит дороже самого просмотра.
+ * Количество потоков задает свойство movies.parallel.threads (по умолчанию число процессоров),
+ * наименьший размер коллекции для параллельного просмотра - свойство movies.parallel.threshold.
+ * Значение границы по умолчанию (20000) не подобрано замером на многоядерном сервере:
+ * границу для конкретной машины показывает {@link ScanCrossover}
+ */
+final class ParallelScanner {
+    private static final int MIN_CHUNK = 1024;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    ParallelScanner(int parallelism, int threshold) {
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("movies-scan-" + threads.incrementAndGet());
+            return thread;
+        }, null, false);
+        this.threshold = threshold;
+    }
+
+    /**
+     * создать пул по системным свойствам
+     * @return пул просмотра
+     */
+    static ParallelScanner fromProperties() {
+        return new ParallelScanner(
+                Integer.getInteger("movies.parallel.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("movies.parallel.threshold", 20000));
+    }
+
+    /**
+     * собрать результат по элементам источника
+     * @param source источник
+     * @param size размер коллекции, по которому выбирается последовательный или параллельный просмотр
+     * @param supplier создание пустого результата куска
+     * @param accumulator добавление элемента в результат куска
+     * @param finisher завершение результата куска перед слиянием
+     * @param combiner слияние результатов соседних кусков, левый кусок первый
+     * @return результат
+     */
+    <T, R> R collect(Spliterator<T> source, long size, Supplier<R> supplier, BiConsumer<R, ? super T> accumulator,
+                     UnaryOperator<R> finisher, BinaryOperator<R> combiner) {
+        if (size < threshold || pool.getParallelism() < 2) {
+            return leaf(source, supplier, accumulator, finisher);
+        }
+        long chunk = Math.max(MIN_CHUNK, size / (pool.getParallelism() * 4L));
+        return pool.invoke(new ScanTask<T, R>(source, chunk, supplier, accumulator, finisher, combiner));
+    }
+
+    /**
+     * отобрать элементы источника и упорядочить их: куски сортируются параллельно,
+     * затем упорядоченные куски сливаются
+     * @param source источник
+     * @param size размер коллекции
+     * @param filter условие отбора
+     * @param order порядок или null, если порядок не важен
+     * @return отобранные элементы
+     */
+    <T> List<T> filterSorted(Spliterator<T> source, long size, Predicate<? super T> filter, Comparator<? super T> order) {
+        return collect(source, size, ArrayList::new,
+                (list, item) -> {
+                    if (filter.test(item)) {
+                        list.add(item);
+                    }
+                },
+                list -> {
+                    if (order != null) {
+                        list.sort(order);
+                    }
+                    return list;
+                },
+                (left, right) -> order != null ? merge(left, right, order) : concat(left, right));
+    }
+
+    private static <T, R> R leaf(Spliterator<T> source, Supplier<R> supplier, BiConsumer<R, ? super T> accumulator,
+                                 UnaryOperator<R> finisher) {
+        R result = supplier.get();
+        source.forEachRemaining(item -> accumulator.accept(result, item));
+        return finisher.apply(result);
+    }
+
+    private static <T> ArrayList<T> concat(ArrayList<T> left, ArrayList<T> right) {
+        left.addAll(right);
+        return left;
+    }
+
+    private static <T> ArrayList<T> merge(ArrayList<T> left, ArrayList<T> right, Comparator<? super T> order) {
+        ArrayList<T> result = new ArrayList<T>(left.size() + right.size());
+        int i = 0;
+        int j = 0;
+        while (i < left.size() && j < right.size()) {
+            result.add(order.compare(right.get(j), left.get(i)) < 0 ? right.get(j++) : left.get(i++));
+        }
+        result.addAll(left.subList(i, left.size()));
+        result.addAll(right.subList(j, right.size()));
+        return result;
+    }
+
+    /**
+     * Задача обработки куска источника. Пока кусок больше заданного, от него отделяется
+     * первая часть, которая обрабатывается параллельно
+     */
+    private static final class ScanTask<T, R> extends RecursiveTask<R> {
+        private final Spliterator<T> source;
+        private final long chunk;
+        private final Supplier<R> supplier;
+        private final BiConsumer<R, ? super T> accumulator;
+        private final UnaryOperator<R> finisher;
+        private final BinaryOperator<R> combiner;
+
+        ScanTask(Spliterator<T> source, long chunk, Supplier<R> supplier, BiConsumer<R, ? super T> accumulator,
+                 UnaryOperator<R> finisher, BinaryOperator<R> combiner) {
+            this.source = source;
+            this.chunk = chunk;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.finisher = finisher;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            Spliterator<T> prefix = source.estimateSize() > chunk ? source.trySplit() : null;
+            if (prefix == null) {
+                return leaf(source, supplier, accumulator, finisher);
+            }
+            ScanTask<T, R> left = new ScanTask<T, R>(prefix, chunk, supplier, accumulator, finisher, combiner);
+            left.fork();
+            R right = new ScanTask<T, R>(source, chunk, supplier, accumulator, finisher, combiner).compute();
+            return combiner.apply(left.join(), right);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.dima.movies;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.time.ZonedDateTime;
+import java.util.Objects;
 import java.util.Scanner;
 
 /**
@@ -206,4 +207,30 @@ public class Person  implements CanValidate, Serializable {
         }
         return true;
     }
+
+    /**
+     * сравнение людей по значению всех полей
+     * @param o объект для сравнения
+     * @return True-все поля совпадают
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Person person = (Person) o;
+        return Objects.equals(name, person.name)
+                && Objects.equals(birthday, person.birthday)
+                && Objects.equals(passportID, person.passportID)
+                && hairColor == person.hairColor
+                && Objects.equals(location, person.location);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, birthday, passportID, hairColor, location);
+    }
 }
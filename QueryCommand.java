@@ -0,0 +1,70 @@
+package org.dima.commands;
+
+/**
+ * Класс для сериализации в поток команды Query - отбора фильмов по условию на сервере
+ */
+public class QueryCommand extends MovieCommand {
+    private final MoviePredicate filter;
+    private final MovieField sortBy;
+    private final boolean descending;
+    private final int limit;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param filter условие отбора или null, если нужны все фильмы
+     * @param sortBy поле сортировки или null для естественного порядка фильмов
+     * @param descending сортировать по убыванию
+     * @param limit наибольшее количество фильмов в ответе или 0 без ограничения
+     */
+    public QueryCommand(MoviePredicate filter, MovieField sortBy, boolean descending, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        this.filter = filter;
+        this.sortBy = sortBy;
+        this.descending = descending;
+        this.limit = limit;
+    }
+
+    /**
+     * Функция получения значения поля filter
+     * @return возвращает значение поля filter
+     */
+    public MoviePredicate getFilter() {
+        return filter;
+    }
+
+    /**
+     * Функция получения значения поля sortBy
+     * @return возвращает значение поля sortBy
+     */
+    public MovieField getSortBy() {
+        return sortBy;
+    }
+
+    /**
+     * Функция получения значения поля descending
+     * @return возвращает значение поля descending
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Функция получения значения поля limit
+     * @return возвращает значение поля limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCommand{" +
+                "filter=" + filter +
+                ", sortBy=" + sortBy +
+                ", descending=" + descending +
+                ", limit=" + limit +
+                '}';
+    }
+}
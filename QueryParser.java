@@ -0,0 +1,384 @@
+package org.dima.client;
+
+import org.dima.commands.AggregateCommand;
+import org.dima.commands.DateRangeCommand;
+import org.dima.commands.FindByDirectorCommand;
+import org.dima.commands.GroupKey;
+import org.dima.commands.MovieField;
+import org.dima.commands.MoviePredicate;
+import org.dima.commands.NearestCommand;
+import org.dima.commands.QueryCommand;
+import org.dima.commands.SpatialTarget;
+import org.dima.commands.TimeField;
+import org.dima.commands.TopKCommand;
+import org.dima.commands.WithinBoxCommand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Разбор текста команды query:
+ * <pre>
+ * query [условие] [sort поле [desc]] [limit n]
+ * условие := и {OR и}
+ * и       := не {AND не}
+ * не      := NOT не | ( условие ) | поле операция значение
+ * </pre>
+ * операции: = != &lt; &lt;= &gt; &gt;= ~ (содержит подстроку), значения с пробелами записываются в кавычках.
+ * Команда aggregate использует то же условие:
+ * <pre>
+ * aggregate [by признак] [поле ...] [where условие]
+ * top k поле [asc|desc] [where условие]
+ * date_range creation_date|director_birthday [from|after время] [to|before время] [desc] [offset n] [limit n]
+ * find_by_director passport|name значение
+ * within_box coordinates|location minX minY maxX maxY
+ * nearest k coordinates|location x y
+ * </pre>
+ */
+class QueryParser {
+    private static final Pattern TOKEN = Pattern.compile("\\s*(\"[^\"]*\"|<=|>=|!=|=|<|>|~|\\(|\\)|[^\\s()<>=!~\"]+)");
+
+    private final List<String> tokens = new ArrayList<String>();
+    private int position = 0;
+
+    private QueryParser(String text) {
+        Matcher matcher = TOKEN.matcher(text);
+        int end = 0;
+        while (matcher.lookingAt()) {
+            tokens.add(matcher.group(1));
+            end = matcher.end();
+            matcher.region(end, text.length());
+        }
+        if (!text.substring(end).trim().isEmpty()) {
+            throw new IllegalArgumentException("Неверный символ: " + text.substring(end).trim());
+        }
+    }
+
+    /**
+     * разобрать команду query
+     * @param text текст после имени команды
+     * @return команда
+     * @throws IllegalArgumentException ошибка в тексте команды
+     */
+    static QueryCommand parse(String text) throws IllegalArgumentException {
+        QueryParser parser = new QueryParser(text);
+        MoviePredicate filter = null;
+        if (parser.hasNext() && !parser.isKeyword("SORT") && !parser.isKeyword("LIMIT")) {
+            filter = parser.or();
+        }
+        MovieField sortBy = null;
+        boolean descending = false;
+        int limit = 0;
+        if (parser.isKeyword("SORT")) {
+            parser.next();
+            sortBy = field(parser.next());
+            if (parser.isKeyword("DESC")) {
+                parser.next();
+                descending = true;
+            } else if (parser.isKeyword("ASC")) {
+                parser.next();
+            }
+        }
+        if (parser.isKeyword("LIMIT")) {
+            parser.next();
+            try {
+                limit = Integer.parseInt(parser.next());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("limit должен быть целым числом");
+            }
+        }
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException("Лишний текст: " + parser.next());
+        }
+        return new QueryCommand(filter, sortBy, descending, limit);
+    }
+
+    /**
+     * разобрать команду aggregate
+     * @param text текст после имени команды
+     * @return команда
+     * @throws IllegalArgumentException ошибка в тексте команды
+     */
+    static AggregateCommand parseAggregate(String text) throws IllegalArgumentException {
+        QueryParser parser = new QueryParser(text);
+        GroupKey groupBy = null;
+        if (parser.isKeyword("BY")) {
+            parser.next();
+            String name = parser.next();
+            try {
+                groupBy = GroupKey.valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неизвестный признак группировки: " + name);
+            }
+        }
+        List<MovieField> measures = new ArrayList<MovieField>();
+        while (parser.hasNext() && !parser.isKeyword("WHERE")) {
+            measures.add(field(parser.next()));
+        }
+        MoviePredicate filter = null;
+        if (parser.isKeyword("WHERE")) {
+            parser.next();
+            filter = parser.or();
+        }
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException("Лишний текст: " + parser.next());
+        }
+        return new AggregateCommand(groupBy, measures, filter);
+    }
+
+    /**
+     * разобрать команду top
+     * @param text текст после имени команды
+     * @return команда
+     * @throws IllegalArgumentException ошибка в тексте команды
+     */
+    static TopKCommand parseTopK(String text) throws IllegalArgumentException {
+        QueryParser parser = new QueryParser(text);
+        int k;
+        try {
+            k = Integer.parseInt(parser.next());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("k должно быть целым числом");
+        }
+        MovieField field = field(parser.next());
+        boolean descending = true;
+        if (parser.isKeyword("ASC")) {
+            parser.next();
+            descending = false;
+        } else if (parser.isKeyword("DESC")) {
+            parser.next();
+        }
+        MoviePredicate filter = null;
+        if (parser.isKeyword("WHERE")) {
+            parser.next();
+            filter = parser.or();
+        }
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException("Лишний текст: " + parser.next());
+        }
+        return new TopKCommand(field, k, descending, filter);
+    }
+
+    /**
+     * разобрать команду date_range. Границы from и to входят в диапазон, after и before - нет
+     * @param text текст после имени команды
+     * @return команда
+     * @throws IllegalArgumentException ошибка в тексте команды
+     */
+    static DateRangeCommand parseDateRange(String text) throws IllegalArgumentException {
+        QueryParser parser = new QueryParser(text);
+        TimeField field;
+        String name = parser.next();
+        try {
+            field = TimeField.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестное поле: " + name + ", ожидается creation_date или director_birthday");
+        }
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        boolean descending = false;
+        int offset = 0;
+        int limit = 0;
+        while (parser.hasNext()) {
+            String keyword = parser.next().toUpperCase();
+            switch (keyword) {
+                case "FROM":
+                    from = field.parse(parser.next());
+                    break;
+                case "AFTER":
+                    from = field.parse(parser.next()) + 1;
+                    break;
+                case "TO":
+                    to = field.parse(parser.next());
+                    break;
+                case "BEFORE":
+                    to = field.parse(parser.next()) - 1;
+                    break;
+                case "DESC":
+                    descending = true;
+                    break;
+                case "OFFSET":
+                    offset = count(parser.next(), "offset");
+                    break;
+                case "LIMIT":
+                    limit = count(parser.next(), "limit");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Лишний текст: " + keyword.toLowerCase());
+            }
+        }
+        return new DateRangeCommand(field, from, to, descending, offset, limit);
+    }
+
+    private static int count(String text, String name) {
+        try {
+            int value = Integer.parseInt(text);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+        }
+        throw new IllegalArgumentException(name + " должно быть неотрицательным целым числом");
+    }
+
+    /**
+     * разобрать команду find_by_director. Значение занимает остаток строки,
+     * потому что имена режиссеров содержат пробелы
+     * @param text текст после имени команды
+     * @return команда
+     * @throws IllegalArgumentException ошибка в тексте команды
+     */
+    static FindByDirectorCommand parseFindByDirector(String text) throws IllegalArgumentException {
+        String[] parts = text.trim().split("\\s+", 2);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Ожидается passport или name и значение");
+        }
+        String value = parts[1].trim();
+        if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        if ("passport".equalsIgnoreCase(parts[0])) {
+            return new FindByDirectorCommand(value, false);
+        }
+        if ("name".equalsIgnoreCase(parts[0])) {
+            return new FindByDirectorCommand(value, true);
+        }
+        throw new IllegalArgumentException("Ожидается passport или name: " + parts[0]);
+    }
+
+    /**
+     * разобрать команду within_box
+     * @param text текст после имени команды
+     * @return команда
+     * @throws IllegalArgumentException ошибка в тексте команды
+     */
+    static WithinBoxCommand parseWithinBox(String text) throws IllegalArgumentException {
+        QueryParser parser = new QueryParser(text);
+        SpatialTarget target = target(parser.next());
+        double minX = number(parser.next());
+        double minY = number(parser.next());
+        double maxX = number(parser.next());
+        double maxY = number(parser.next());
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException("Лишний текст: " + parser.next());
+        }
+        return new WithinBoxCommand(target, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * разобрать команду nearest
+     * @param text текст после имени команды
+     * @return команда
+     * @throws IllegalArgumentException ошибка в тексте команды
+     */
+    static NearestCommand parseNearest(String text) throws IllegalArgumentException {
+        QueryParser parser = new QueryParser(text);
+        int k;
+        try {
+            k = Integer.parseInt(parser.next());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("k должно быть целым числом");
+        }
+        SpatialTarget target = target(parser.next());
+        double x = number(parser.next());
+        double y = number(parser.next());
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException("Лишний текст: " + parser.next());
+        }
+        return new NearestCommand(target, x, y, k);
+    }
+
+    private MoviePredicate or() {
+        List<MoviePredicate> operands = new ArrayList<MoviePredicate>();
+        operands.add(and());
+        while (isKeyword("OR")) {
+            next();
+            operands.add(and());
+        }
+        return operands.size() == 1 ? operands.get(0) : new MoviePredicate.Or(operands);
+    }
+
+    private MoviePredicate and() {
+        List<MoviePredicate> operands = new ArrayList<MoviePredicate>();
+        operands.add(not());
+        while (isKeyword("AND")) {
+            next();
+            operands.add(not());
+        }
+        return operands.size() == 1 ? operands.get(0) : new MoviePredicate.And(operands);
+    }
+
+    private MoviePredicate not() {
+        if (isKeyword("NOT")) {
+            next();
+            return MoviePredicate.not(not());
+        }
+        if ("(".equals(peek())) {
+            next();
+            MoviePredicate result = or();
+            if (!")".equals(next())) {
+                throw new IllegalArgumentException("Ожидается )");
+            }
+            return result;
+        }
+        MovieField field = field(next());
+        String symbol = next();
+        MoviePredicate.Operator operator = MoviePredicate.Operator.of(symbol);
+        if (operator == null) {
+            throw new IllegalArgumentException("Неизвестная операция: " + symbol);
+        }
+        String value = next();
+        if (value.startsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        if (operator == MoviePredicate.Operator.CONTAINS) {
+            return MoviePredicate.compare(field, operator, value);
+        }
+        return MoviePredicate.compare(field, operator, field.parse(value));
+    }
+
+    private static SpatialTarget target(String name) {
+        try {
+            return SpatialTarget.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестные точки: " + name + ", ожидается coordinates или location");
+        }
+    }
+
+    private static double number(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверное число: " + text);
+        }
+    }
+
+    private static MovieField field(String name) {
+        try {
+            return MovieField.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестное поле: " + name);
+        }
+    }
+
+    private boolean hasNext() {
+        return position < tokens.size();
+    }
+
+    private String peek() {
+        return hasNext() ? tokens.get(position) : null;
+    }
+
+    private String next() {
+        if (!hasNext()) {
+            throw new IllegalArgumentException("Неожиданный конец команды");
+        }
+        return tokens.get(position++);
+    }
+
+    private boolean isKeyword(String keyword) {
+        return hasNext() && keyword.equalsIgnoreCase(peek());
+    }
+}
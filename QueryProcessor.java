@@ -18,14 +18,14 @@ import java.util.*;
  */
 public class QueryProcessor {
     private Stack<String> scripts = new Stack<>();
-    private DbClient client;
+    private MoviesClient client;
 
     /**
      * конструктор класса
      *
      * @param client база данных к которой идут запросы
      */
-    public QueryProcessor(DbClient client) {
+    public QueryProcessor(MoviesClient client) {
         this.client = client;
         //     runTests();
     }
@@ -150,6 +150,80 @@ public class QueryProcessor {
                     replaceIfGreater(key.trim(), movie);
                     break;
                 }
+                case "QUERY": {
+                    try {
+                        query(QueryParser.parse(scanner.nextLine()));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Ошибка: " + ex.getMessage() + ". Повторите ввод.");
+                    }
+                    break;
+                }
+                case "AGGREGATE": {
+                    try {
+                        table(QueryParser.parseAggregate(scanner.nextLine()));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Ошибка: " + ex.getMessage() + ". Повторите ввод.");
+                    }
+                    break;
+                }
+                case "TOP": {
+                    try {
+                        top(QueryParser.parseTopK(scanner.nextLine()));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Ошибка: " + ex.getMessage() + ". Повторите ввод.");
+                    }
+                    break;
+                }
+                case "DATE_RANGE": {
+                    try {
+                        show(QueryParser.parseDateRange(scanner.nextLine()));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Ошибка: " + ex.getMessage() + ". Повторите ввод.");
+                    }
+                    break;
+                }
+                case "FIND_BY_DIRECTOR": {
+                    try {
+                        show(QueryParser.parseFindByDirector(scanner.nextLine()));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Ошибка: " + ex.getMessage() + ". Повторите ввод.");
+                    }
+                    break;
+                }
+                case "COUNT_BY_DIRECTOR": {
+                    String director = scanner.nextLine().trim();
+                    table(new CountByDirectorCommand(director.isEmpty() ? null : director));
+                    break;
+                }
+                case "WITHIN_BOX": {
+                    try {
+                        show(QueryParser.parseWithinBox(scanner.nextLine()));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Ошибка: " + ex.getMessage() + ". Повторите ввод.");
+                    }
+                    break;
+                }
+                case "STATS":
+                    stats();
+                    break;
+                case "RECORDING": {
+                    String[] words = scanner.nextLine().trim().split("\\s+", 2);
+                    try {
+                        RecordingCommand.Action action = RecordingCommand.Action.valueOf(words[0].toUpperCase());
+                        recording(new RecordingCommand(action, words.length > 1 ? words[1].trim() : null));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Ошибка: действие может быть только [start, stop, dump, status]. Повторите ввод.");
+                    }
+                    break;
+                }
+                case "NEAREST": {
+                    try {
+                        show(QueryParser.parseNearest(scanner.nextLine()));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Ошибка: " + ex.getMessage() + ". Повторите ввод.");
+                    }
+                    break;
+                }
                 default:
                     System.out.println("!!! Invalid command: " + cmd);
             }
@@ -158,21 +232,31 @@ public class QueryProcessor {
     }
 
     private void help() {
-        String help_string = "clear : очистить коллекцию\n" +
+        String help_string = "aggregate [by genre|rating|director|creation_month] [поле ...] [where условие] : вывести количество, сумму, минимум, максимум и среднее числовых полей (по умолчанию oscars, coordinate_x, coordinate_y) по группам\n" +
+                "clear : очистить коллекцию\n" +
+                "count_by_director [name] : вывести количество элементов каждого режиссера (или режиссеров с заданным именем) по номеру паспорта\n" +
+                "date_range creation_date|director_birthday [from|after время] [to|before время] [desc] [offset n] [limit n] : вывести страницу элементов, дата создания (или день рождения режиссера) которых лежит в диапазоне, в порядке времени\n" +
                 "execute_script file_name : считать и исполнить скрипт из указанного файла. В скрипте содержатся команды в таком же виде, в котором их вводит пользователь в интерактивном режиме.\n" +
                 "exit : завершить программу (без сохранения в файл)\n" +
+                "find_by_director passport|name значение : вывести элементы режиссера с заданным номером паспорта или именем\n" +
                 "filter_contains_name name : вывести элементы, значение поля name которых содержит заданную подстроку\n" +
                 "info : вывести в стандартный поток вывода информацию о коллекции (тип, дата инициализации, количество элементов и т.д.) \n" +
                 "insert key {element} : добавить новый элемент с заданным ключом\n" +
                 "max_by_name : вывести любой объект из коллекции, значение поля name которого является максимальным\n" +
+                "nearest k coordinates|location x y : вывести k элементов, координаты (или расположение режиссера) которых ближе всего к заданной точке\n" +
                 "print_field_ascending_genre genre : вывести значения поля genre в порядке возрастания\n" +
+                "query [условие] [sort поле [desc]] [limit n] : вывести элементы, удовлетворяющие условию, например query oscars >= 2 and (genre = comedy or not director_name ~ \"Smith\") sort creation_date desc limit 10\n" +
                 "replace_if_greater key {element} : заменить значение по ключу, если новое значение больше старого\n" +
+                "recording start [default|profile]|stop|dump file.jfr|status : управлять записью Java Flight Recorder на сервере, dump записывает данные в файл каталога записей сервера\n" +
                 "remove_key key : удалить элемент из коллекции по его ключу\n" +
                 "remove_lower {element} : удалить из коллекции все элементы, меньшие, чем заданный\n" +
                 "remove_lower_key key : удалить из коллекции все элементы, ключ которых меньше, чем заданный\n" +
                 "save : сохранить коллекцию в файл\n" +
                 "show : вывести в стандартный поток вывода все элементы коллекции в строковом представлении\n" +
-                "update id {element} : обновить значение элемента коллекции, id которого равен заданному\n";
+                "stats : вывести задержки обработки команд сервером по этапам (p50/p99/p999/max в микросекундах) и счетчики ответов\n" +
+                "top k поле [asc|desc] [where условие] : вывести k элементов с наибольшими (или наименьшими) значениями поля\n" +
+                "update id {element} : обновить значение элемента коллекции, id которого равен заданному\n" +
+                "within_box coordinates|location minX minY maxX maxY : вывести элементы, координаты (или расположение режиссера) которых лежат в прямоугольнике\n";
 
 
         System.out.println(help_string);
@@ -198,6 +282,73 @@ public class QueryProcessor {
         }
     }
 
+    private void top(TopKCommand command) throws IOException {
+        try {
+            CommandResultWithObject result = (CommandResultWithObject) client.exec(command);
+            if (result.getType() != CommandResult.Type.SUCCESS) {
+                System.out.println(result.getError());
+                return;
+            }
+            for (Movie movie : (List<Movie>) result.getObject()) {
+                System.out.println(movie);
+            }
+        } catch (ClassNotFoundException e) {
+        }
+    }
+
+    private void show(MovieCommand command) throws IOException {
+        try {
+            CommandResultWithObject result = (CommandResultWithObject) client.exec(command);
+            if (result.getType() != CommandResult.Type.SUCCESS) {
+                System.out.println(result.getError());
+                return;
+            }
+            for (Movie movie : (List<Movie>) result.getObject()) {
+                System.out.println(movie);
+            }
+        } catch (ClassNotFoundException e) {
+        }
+    }
+
+    private void query(QueryCommand command) throws IOException {
+        try {
+            CommandResultWithObject result = (CommandResultWithObject) client.exec(command);
+            if (result.getType() != CommandResult.Type.SUCCESS) {
+                System.out.println(result.getError());
+                return;
+            }
+            for (Movie movie : (List<Movie>) result.getObject()) {
+                System.out.println(movie);
+            }
+        } catch (ClassNotFoundException e) {
+        }
+    }
+
+    private void table(MovieCommand command) throws IOException {
+        try {
+            CommandResultWithObject result = (CommandResultWithObject) client.exec(command);
+            if (result.getType() != CommandResult.Type.SUCCESS) {
+                System.out.println(result.getError());
+                return;
+            }
+            AggregateTable table = (AggregateTable) result.getObject();
+            StringBuilder header = new StringBuilder(String.format("%-20s %8s", "group", "count"));
+            for (String measure : table.getMeasures()) {
+                header.append(String.format(" | %-12s %10s %10s %10s %10s", measure, "sum", "min", "max", "avg"));
+            }
+            System.out.println(header);
+            for (AggregateTable.Row row : table.getRows()) {
+                StringBuilder line = new StringBuilder(String.format("%-20s %8d", row.getKey() != null ? row.getKey() : "-", row.getCount()));
+                for (int i = 0; i < table.getMeasures().size(); i++) {
+                    line.append(String.format(" | %-12s %10.2f %10.2f %10.2f %10.2f", "",
+                            row.getSum(i), row.getMin(i), row.getMax(i), row.getAverage(i)));
+                }
+                System.out.println(line);
+            }
+        } catch (ClassNotFoundException e) {
+        }
+    }
+
     private Movie maxByName() throws IOException {
         try {
            CommandResultWithObject result = (CommandResultWithObject) client.exec(new MaxByNameCommand());
@@ -229,6 +380,48 @@ public class QueryProcessor {
             System.out.println("Init date      : " + info.getInit_time());
             System.out.println("Elements count : " + info.getElements_count());
             System.out.println("Maximum id     : " + info.getMax_id());
+            System.out.println("Dedup saved    : " + info.getDedup_saved_bytes() + " bytes");
+            if (info.getReplication() != null) {
+                System.out.println("Replication    : " + info.getReplication());
+            }
+            if (client instanceof DbClient && ((DbClient) client).getNearCache() != null) {
+                System.out.println("Near cache     : " + ((DbClient) client).getNearCache());
+            }
+        } catch (ClassNotFoundException e) {
+        }
+    }
+
+    private void recording(RecordingCommand command) throws IOException {
+        try {
+            CommandResult result = client.exec(command);
+            if (result.getType() == CommandResult.Type.SUCCESS) {
+                System.out.println(((CommandResultWithObject) result).getObject());
+            } else {
+                System.out.println("Error: " + result.getError());
+            }
+        } catch (ClassNotFoundException e) {
+        }
+    }
+
+    private void stats() throws IOException {
+        try {
+            CommandResult result = client.exec(new StatsCommand());
+            if (result.getType() != CommandResult.Type.SUCCESS) {
+                System.out.println("Error: " + result.getError());
+                return;
+            }
+            ServerStatistics statistics = (ServerStatistics) ((CommandResultWithObject) result).getObject();
+            System.out.println(String.format("%-32s %-8s %10s %10s %10s %10s %10s",
+                    "Command", "Phase", "Count", "p50 us", "p99 us", "p999 us", "max us"));
+            for (ServerStatistics.Row row : statistics.getRows()) {
+                System.out.println(String.format("%-32s %-8s %10d %10.1f %10.1f %10.1f %10.1f",
+                        row.getCommand(), row.getPhase(), row.getCount(),
+                        row.getP50() / 1000.0, row.getP99() / 1000.0, row.getP999() / 1000.0, row.getMax() / 1000.0));
+            }
+            System.out.println("Bytes in       : " + statistics.getBytesIn());
+            System.out.println("Bytes out      : " + statistics.getBytesOut());
+            System.out.println("Cached answers : " + statistics.getCachedAnswers());
+            System.out.println("Answers        : " + statistics.getResults());
         } catch (ClassNotFoundException e) {
         }
     }
@@ -285,9 +478,11 @@ public class QueryProcessor {
             } else {
                 Movie movie = (Movie) result.getObject();
                 input(movie, null);
-                CommandResult res = (CommandResult) client.exec(new UpdateCommand(id, movie));
+                CommandResult res = (CommandResult) client.exec(new UpdateCommand(id, movie, movie.getVersion()));
                 if (res.getType() == CommandResult.Type.SUCCESS) {
                     System.out.println("Запись  с идентификатором " + id + " изменена.");
+                } else if (res.getType() == CommandResult.Type.CONFLICT) {
+                    System.out.println("Запись  с идентификатором " + id + " изменена другим клиентом, повторите изменение.");
                 } else {
                     System.out.println("Error: " + res.getError());
                 }
@@ -0,0 +1,65 @@
+package org.dima.commands;
+
+/**
+ * Класс для сериализации в поток команды recording - управления записью Java Flight Recorder на сервере
+ */
+public class RecordingCommand extends MovieCommand {
+    /**
+     * Действия с записью
+     */
+    public enum Action {
+        /**
+         * начать запись с настройками default или profile
+         */
+        START,
+        /**
+         * остановить запись
+         */
+        STOP,
+        /**
+         * записать накопленные данные в файл .jfr каталога записей сервера, запись продолжается
+         */
+        DUMP,
+        /**
+         * получить состояние записи
+         */
+        STATUS
+    }
+
+    private final Action action;
+    private final String argument;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param action действие
+     * @param argument настройки для START, файл для DUMP, иначе null
+     */
+    public RecordingCommand(Action action, String argument) {
+        this.action = action;
+        this.argument = argument;
+    }
+
+    /**
+     * Функция получения значения поля action
+     * @return возвращает значение поля action
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * Функция получения значения поля argument
+     * @return возвращает значение поля argument
+     */
+    public String getArgument() {
+        return argument;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordingCommand{" +
+                "action=" + action +
+                ", argument='" + argument + '\'' +
+                '}';
+    }
+}
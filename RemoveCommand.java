@@ -9,13 +9,24 @@ import java.io.Serializable;
  */
 public class RemoveCommand extends MovieCommand {
     private final String key;
+    private final Long expectedVersion;
 
     /**
      * Конструктор - создание нового объекта с определенными значениями
      * @param key ключ для сравнения
      */
     public RemoveCommand(String key) {
+        this(key, null);
+    }
+
+    /**
+     * Конструктор условного удаления: фильм удаляется, только если версия записи не изменилась
+     * @param key ключ для сравнения
+     * @param expectedVersion ожидаемая версия записи, null - удалить без проверки
+     */
+    public RemoveCommand(String key, Long expectedVersion) {
         this.key = key;
+        this.expectedVersion = expectedVersion;
     }
 
     /**
@@ -25,4 +36,12 @@ public class RemoveCommand extends MovieCommand {
     public String getKey() {
         return key;
     }
+
+    /**
+     * Функция получения значения поля expectedVersion
+     * @return возвращает значение поля expectedVersion
+     */
+    public Long getExpectedVersion() {
+        return expectedVersion;
+    }
 }
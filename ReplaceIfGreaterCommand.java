@@ -11,6 +11,7 @@ import java.io.Serializable;
 public class ReplaceIfGreaterCommand extends MovieCommand {
     private final String key;
     private final Movie movie;
+    private final Long expectedVersion;
 
     /**
      * Конструктор - создание нового объекта с определенными значениями
@@ -18,8 +19,19 @@ public class ReplaceIfGreaterCommand extends MovieCommand {
      * @param movie объект фильма
      */
     public ReplaceIfGreaterCommand(String key, Movie movie) {
+        this(key, movie, null);
+    }
+
+    /**
+     * Конструктор условной замены: фильм заменяется, только если версия записи не изменилась
+     * @param key ключ для сравнения
+     * @param movie объект фильма
+     * @param expectedVersion ожидаемая версия записи, null - заменить без проверки
+     */
+    public ReplaceIfGreaterCommand(String key, Movie movie, Long expectedVersion) {
         this.key = key;
         this.movie = movie;
+        this.expectedVersion = expectedVersion;
     }
 
     /**
@@ -37,4 +49,12 @@ public class ReplaceIfGreaterCommand extends MovieCommand {
     public Movie getMovie() {
         return movie;
     }
+
+    /**
+     * Функция получения значения поля expectedVersion
+     * @return возвращает значение поля expectedVersion
+     */
+    public Long getExpectedVersion() {
+        return expectedVersion;
+    }
 }
@@ -0,0 +1,158 @@
+package org.dima.server;
+
+import org.dima.movies.Movie;
+
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Проверка копии коллекции на сервере-последователе ({@link Follower}).
+ * Основной сервер с обычной и с разделенной на части коллекцией принимает одновременные вставки,
+ * очистку, замену содержимого и одновременные вставки с удалениями и очисткой; после каждого шага
+ * копия должна совпасть с коллекцией основного сервера по индентификаторам и названиям.
+ * Буфер подписки увеличивается, чтобы события доходили до последователя без RESYNC.
+ * Запуск: java org.dima.server.ReplicationCheck [фильмов] [частей]
+ */
+public final class ReplicationCheck {
+    private static final long TIMEOUT = 10000;
+    private static final int WRITERS = 4;
+
+    private ReplicationCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int shards = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        if (System.getProperty("movies.subscription.buffer") == null) {
+            System.setProperty("movies.subscription.buffer", String.valueOf(Math.max(1024, 4 * count)));
+        }
+        Path directory = Files.createTempDirectory("movies-replication");
+        try {
+            List<String> errors = new ArrayList<String>();
+            try (MoviesStorage single = new MoviesDB(Files.createFile(directory.resolve("single.xml")))) {
+                check("single", single, directory.resolve("single-copy.xml"), count, errors);
+            }
+            try (MoviesStorage sharded = new ShardedMoviesDB(Files.createFile(directory.resolve("sharded.xml")), shards)) {
+                check(shards + " shards", sharded, directory.resolve("sharded-copy.xml"), count, errors);
+            }
+            if (!errors.isEmpty()) {
+                errors.forEach(System.out::println);
+                System.out.println("FAILED: " + errors.size() + " errors");
+                System.exit(1);
+            }
+            System.out.println("OK: " + count + " movies, single and " + shards + " shards");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * запустить основной сервер и последователя и сверять копию после каждого шага
+     */
+    private static void check(String name, MoviesStorage primary, Path copy, int count, List<String> errors) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        DbServer server = new DbServer(port, primary);
+        Thread thread = new Thread(server::loop, "replication-check-primary");
+        thread.setDaemon(true);
+        thread.start();
+        MoviesStorage replica = new MoviesDB(Files.createFile(copy));
+        Follower follower = new Follower("localhost", port, replica);
+        follower.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!follower.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        if (!follower.isConnected()) {
+            errors.add(name + ": follower did not connect");
+            replica.close();
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        try {
+            write(executor, primary, count, "Movie", false);
+            compare(name + " insert", primary, replica, errors);
+            primary.clear();
+            compare(name + " clear", primary, replica, errors);
+            List<Movie> replacement = new ArrayList<Movie>();
+            for (int i = 0; i < count; i++) {
+                Movie movie = SampleMovies.movie("Replacement " + i, i);
+                movie.setId((long) i + 1);
+                replacement.add(movie);
+            }
+            primary.replace(replacement);
+            compare(name + " replace", primary, replica, errors);
+            Future<?> clear = executor.submit(() -> {
+                primary.clear();
+                return null;
+            });
+            write(executor, primary, count, "Concurrent", true);
+            clear.get();
+            compare(name + " concurrent", primary, replica, errors);
+        } finally {
+            executor.shutdown();
+            replica.close();
+        }
+    }
+
+    /**
+     * вставить фильмы несколькими потоками, удаляя каждый третий
+     */
+    private static void write(ExecutorService executor, MoviesStorage db, int count, String prefix, boolean remove) throws Exception {
+        List<Future<?>> writes = new ArrayList<Future<?>>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writes.add(executor.submit(() -> {
+                for (int i = writer; i < count; i += WRITERS) {
+                    String name = prefix + " " + i;
+                    db.insert(SampleMovies.movie(name, i));
+                    if (remove && i % 3 == 0) {
+                        db.remove(name);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+    }
+
+    /**
+     * дождаться, пока копия совпадет с коллекцией основного сервера
+     */
+    private static void compare(String step, MoviesStorage primary, MoviesStorage replica, List<String> errors) throws InterruptedException {
+        Map<Long, String> expected = contents(primary);
+        Map<Long, String> actual = contents(replica);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!expected.equals(actual) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            actual = contents(replica);
+        }
+        if (!expected.equals(actual)) {
+            errors.add(step + ": primary has " + expected.size() + " movies, follower has " + actual.size());
+        }
+    }
+
+    private static Map<Long, String> contents(MoviesStorage db) {
+        Map<Long, String> result = new TreeMap<Long, String>();
+        for (Movie movie : db.getMoviesBySize()) {
+            result.put(movie.getId(), movie.getName());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package org.dima.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш закодированных ответов на команды чтения.
+ * Каждая запись помечена версией коллекции, при которой она была построена,
+ * и считается устаревшей, как только версия коллекции изменилась.
+ * Объем кэша ограничен суммарным размером ответов, вытесняются давно не использованные записи
+ */
+public class ResponseCache {
+
+    private final long maxBytes;
+    private long usedBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * Конструктор кэша
+     * @param maxBytes максимальный суммарный размер хранимых ответов
+     */
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Получить закодированный ответ
+     * @param key ключ команды
+     * @param version текущая версия коллекции
+     * @return байты ответа или null если ответа нет или он устарел
+     */
+    public synchronized byte[] get(String key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.data;
+    }
+
+    /**
+     * Сохранить закодированный ответ
+     * @param key ключ команды
+     * @param version версия коллекции, на которой построен ответ
+     * @param data байты ответа
+     */
+    public synchronized void put(String key, long version, byte[] data) {
+        if (data.length > maxBytes) {
+            return;
+        }
+        Entry old = entries.put(key, new Entry(version, data));
+        if (old != null) {
+            usedBytes -= old.data.length;
+        }
+        usedBytes += data.length;
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            usedBytes -= eldest.data.length;
+            evictions++;
+        }
+    }
+
+    /**
+     * Функция получения количества попаданий
+     * @return количество попаданий
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Функция получения количества промахов
+     * @return количество промахов
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Функция получения количества вытесненных записей
+     * @return количество вытесненных записей
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResponseCache{" +
+                "entries=" + entries.size() +
+                ", usedBytes=" + usedBytes +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final byte[] data;
+
+        Entry(long version, byte[] data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.dima.server;
+
+import org.dima.movies.*;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Синтетические фильмы для проверок коллекции: жанры, рейтинги, режиссеры и места
+ * повторяются с разными периодами, все поля проходят проверку {@link Movie#validate()}
+ */
+final class SampleMovies {
+    private SampleMovies() {
+    }
+
+    /**
+     * создать фильм
+     * @param name имя фильма
+     * @param i номер фильма
+     * @return фильм без индентификатора
+     */
+    static Movie movie(String name, int i) {
+        Movie movie = new Movie();
+        movie.setName(name);
+        movie.setCreationDate(LocalDate.now());
+        movie.setGenre(MovieGenre.values()[i % MovieGenre.values().length]);
+        movie.setMpaaRating(MpaaRating.values()[i % MpaaRating.values().length]);
+        movie.setOscarsCount(1 + i % 7);
+        Coordinates coordinates = new Coordinates();
+        coordinates.setX(i % 250);
+        coordinates.setY(i % 500);
+        movie.setCoordinates(coordinates);
+        Person director = new Person();
+        director.setName("Director " + i % 1000);
+        director.setPassportID("P" + i % 1000);
+        director.setBirthday(ZonedDateTime.of(1940 + i % 60, 1 + i % 12, 1, 0, 0, 0, 0, ZoneId.of("UTC")));
+        director.setHairColor(Color.values()[i % Color.values().length]);
+        Location location = new Location();
+        location.setX(i % 300);
+        location.setY(i % 400);
+        location.setName("Location " + i % 100);
+        director.setLocation(location);
+        movie.setDirector(director);
+        return movie;
+    }
+}
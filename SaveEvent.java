@@ -0,0 +1,24 @@
+package org.dima.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR записи коллекции в файл
+ */
+@Name("org.dima.Save")
+@Label("Movies Save")
+@Category("Movies")
+@Description("Запись изменившейся коллекции в файл XML")
+final class SaveEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,72 @@
+package org.dima.server;
+
+import org.dima.movies.Movie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Замер границы, начиная с которой параллельный просмотр {@link ParallelScanner} быстрее
+ * последовательного. Для каждого размера коллекции синтетические фильмы отбираются
+ * по вхождению строки в название и сортируются, как в filterByName, сначала в одном потоке,
+ * затем в пуле из заданного количества потоков; выводится медиана времени и найденная граница -
+ * наименьший размер, начиная с которого параллельный просмотр быстрее на всех больших размерах.
+ * Запуск: java org.dima.server.ScanCrossover [потоков] [повторов]
+ */
+public final class ScanCrossover {
+    private static final int[] SIZES = {1000, 2000, 5000, 10000, 20000, 50000, 100000, 200000, 500000};
+
+    private ScanCrossover() {
+    }
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 21;
+        ParallelScanner sequential = new ParallelScanner(1, Integer.MAX_VALUE);
+        ParallelScanner parallel = new ParallelScanner(Math.max(threads, 2), 0);
+        Predicate<Movie> filter = movie -> movie.getName().toUpperCase().contains("7");
+        Comparator<Movie> order = Comparator.naturalOrder();
+        System.out.println("processors " + Runtime.getRuntime().availableProcessors() + ", pool threads " + Math.max(threads, 2));
+        System.out.printf("%10s %14s %14s%n", "size", "sequential ms", "parallel ms");
+        int crossover = -1;
+        for (int size : SIZES) {
+            List<Movie> movies = new ArrayList<Movie>(size);
+            for (int i = 0; i < size; i++) {
+                Movie movie = SampleMovies.movie("Movie " + i, i);
+                movie.setId((long) i + 1);
+                movies.add(movie);
+            }
+            double sequentialMillis = median(sequential, movies, filter, order, repeats);
+            double parallelMillis = median(parallel, movies, filter, order, repeats);
+            System.out.printf("%10d %14.3f %14.3f%n", size, sequentialMillis, parallelMillis);
+            if (parallelMillis < sequentialMillis) {
+                if (crossover < 0) {
+                    crossover = size;
+                }
+            } else {
+                crossover = -1;
+            }
+        }
+        System.out.println(crossover > 0
+                ? "parallel scan wins from " + crossover + " movies: -Dmovies.parallel.threshold=" + crossover
+                : "parallel scan does not win on this machine");
+    }
+
+    private static double median(ParallelScanner scanner, List<Movie> movies, Predicate<Movie> filter,
+                                 Comparator<Movie> order, int repeats) {
+        for (int i = 0; i < repeats; i++) {
+            scanner.filterSorted(movies.spliterator(), movies.size(), filter, order);
+        }
+        double[] millis = new double[repeats];
+        for (int i = 0; i < repeats; i++) {
+            long start = System.nanoTime();
+            scanner.filterSorted(movies.spliterator(), movies.size(), filter, order);
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[repeats / 2];
+    }
+}
@@ -0,0 +1,113 @@
+package org.dima.movies;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Статистика обработки команд сервером: процентили задержек по типам команд и этапам
+ * обработки, объем принятых и отправленных данных, количество ответов каждого типа
+ */
+public class ServerStatistics implements Serializable {
+    private final List<Row> rows = new ArrayList<Row>();
+    private final Map<String, Long> results = new LinkedHashMap<String, Long>();
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long cachedAnswers;
+
+    /**
+     * Задержки одного этапа обработки команд одного типа в наносекундах
+     */
+    public static class Row implements Serializable {
+        private final String command;
+        private final String phase;
+        private final long count;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        public Row(String command, String phase, long count, long p50, long p99, long p999, long max) {
+            this.command = command;
+            this.phase = phase;
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    public ServerStatistics(long bytesIn, long bytesOut, long cachedAnswers) {
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.cachedAnswers = cachedAnswers;
+    }
+
+    /**
+     * добавить строку задержек
+     * @param row строка
+     */
+    public void addRow(Row row) {
+        rows.add(row);
+    }
+
+    /**
+     * добавить количество ответов типа
+     * @param type тип ответа
+     * @param count количество
+     */
+    public void addResult(String type, long count) {
+        results.put(type, count);
+    }
+
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    public Map<String, Long> getResults() {
+        return results;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getCachedAnswers() {
+        return cachedAnswers;
+    }
+}
@@ -0,0 +1,398 @@
+package org.dima.client;
+
+import org.dima.commands.*;
+import org.dima.movies.AggregateTable;
+import org.dima.movies.Movie;
+import org.dima.movies.MoviesDbInformation;
+import org.dima.movies.ServerStatistics;
+import org.dima.tools.NodeIds;
+import org.dima.tools.ObjectSizeComparator;
+import org.dima.tools.SortedMerge;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Клиент коллекции, распределенной между несколькими серверами.
+ * Команды по одному ключу выполняются на одном сервере: команды по названию - на сервере,
+ * выбранном согласованным хешированием названия, команды по индентификатору - на сервере,
+ * номер которого записан в индентификаторе (см. {@link NodeIds}). Команды над всей коллекцией
+ * рассылаются всем серверам параллельно, упорядоченные ответы сливаются в том же порядке.
+ * Сервер i-го адреса должен быть запущен со свойством movies.node=i
+ */
+public class ShardedDbClient implements MoviesClient {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final List<DbClient> nodes;
+    private final HashRing ring;
+    private final ExecutorService executor;
+
+    /**
+     * Конструктор открывающий TCP соединения со всеми серверами
+     * @param addresses адреса серверов в виде host:port через запятую, в порядке номеров серверов
+     * @throws IOException
+     */
+    public ShardedDbClient(String addresses) throws IOException {
+        String[] parts = addresses.split(",");
+        if (parts.length > NodeIds.MAX_NODES) {
+            throw new IllegalArgumentException("Too many nodes: " + parts.length);
+        }
+        List<DbClient> list = new ArrayList<DbClient>(parts.length);
+        try {
+            for (String part : parts) {
+                int colon = part.lastIndexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Node address must be host:port: " + part);
+                }
+                list.add(new DbClient(part.substring(0, colon).trim(), Integer.parseInt(part.substring(colon + 1).trim())));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (DbClient client : list) {
+                client.close();
+            }
+            throw e;
+        }
+        this.nodes = Collections.unmodifiableList(list);
+        this.ring = new HashRing(list.size(), VIRTUAL_NODES);
+        this.executor = Executors.newFixedThreadPool(list.size(), runnable -> {
+            Thread thread = new Thread(runnable, "movies-scatter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Закрытие TCP соединений
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        IOException failure = null;
+        for (DbClient node : nodes) {
+            try {
+                node.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Функция получения количества серверов
+     * @return количество серверов
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * получить сервер, которому принадлежит название фильма
+     * @param name название фильма
+     * @return номер сервера
+     */
+    public int nodeForName(String name) {
+        return ring.nodeFor(name);
+    }
+
+    /**
+     * Метод обработки команд
+     * @param command команда
+     * @return  результат исполнения
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @Override
+    public CommandResult exec(MovieCommand command) throws IOException, ClassNotFoundException {
+        if (command instanceof FindByIdCommand) {
+            return execById(((FindByIdCommand) command).getId(), command);
+        } else if (command instanceof UpdateCommand) {
+            return update((UpdateCommand) command);
+        } else if (command instanceof InsertCommand) {
+            return nodes.get(ring.nodeFor(((InsertCommand) command).getMovie().getName())).exec(command);
+        } else if (command instanceof FindByNameCommand) {
+            return nodes.get(ring.nodeFor(((FindByNameCommand) command).getKey())).exec(command);
+        } else if (command instanceof RemoveCommand) {
+            return nodes.get(ring.nodeFor(((RemoveCommand) command).getKey())).exec(command);
+        } else if (command instanceof ReplaceIfGreaterCommand) {
+            return nodes.get(ring.nodeFor(((ReplaceIfGreaterCommand) command).getKey())).exec(command);
+        } else if (command instanceof ShowCommand || command instanceof FilterContainsNameCommand
+                || command instanceof PrintFieldAscendingGenreCommand) {
+            return mergeMovies(scatter(command), bySize(), 0);
+        } else if (command instanceof MaxByNameCommand) {
+            return maxByName(scatter(command));
+        } else if (command instanceof InfoCommand) {
+            return information(scatter(command));
+        } else if (command instanceof TestCommand || command instanceof ClearCommand || command instanceof RecordingCommand
+                || command instanceof RemoveLowerCommand || command instanceof RemoveLowerKeyCommand) {
+            return anySucceeded(scatter(command));
+        } else if (command instanceof QueryCommand) {
+            QueryCommand query = (QueryCommand) command;
+            Comparator<Movie> order = query.getSortBy() != null
+                    ? query.getSortBy().comparator(query.isDescending())
+                    : (query.isDescending() ? Comparator.<Movie>reverseOrder() : Comparator.<Movie>naturalOrder());
+            return mergeMovies(scatter(command), order, query.getLimit());
+        } else if (command instanceof TopKCommand) {
+            TopKCommand topK = (TopKCommand) command;
+            return mergeMovies(scatter(command), topK.getField().comparator(topK.isDescending()), topK.getK());
+        } else if (command instanceof DateRangeCommand) {
+            return dateRange((DateRangeCommand) command);
+        } else if (command instanceof FindByDirectorCommand || command instanceof WithinBoxCommand) {
+            return mergeMovies(scatter(command), Comparator.comparing(Movie::getId), 0);
+        } else if (command instanceof NearestCommand) {
+            NearestCommand nearest = (NearestCommand) command;
+            return mergeMovies(scatter(command), nearest.getTarget().distance(nearest.getX(), nearest.getY()), nearest.getK());
+        } else if (command instanceof AggregateCommand || command instanceof CountByDirectorCommand) {
+            return mergeTables(scatter(command));
+        } else if (command instanceof StatsCommand) {
+            return statistics(scatter(command));
+        }
+        return new CommandResultWithObject(CommandResult.Type.ERROR, "Command is not supported by sharded client: " + command);
+    }
+
+    /**
+     * выполнить команду на сервере, выделившем индентификатор
+     */
+    private CommandResult execById(Long id, MovieCommand command) throws IOException, ClassNotFoundException {
+        if (id == null || NodeIds.nodeOf(id) >= nodes.size()) {
+            return new CommandResultWithObject(CommandResult.Type.WARNING, "Not found");
+        }
+        return nodes.get(NodeIds.nodeOf(id)).exec(command);
+    }
+
+    /**
+     * обновить фильм. Если новое название принадлежит другому серверу, фильм переносится
+     * на этот сервер: вставляется там с новым индентификатором и удаляется со старого сервера
+     * условным удалением, а если запись успели изменить, вставленная копия удаляется
+     */
+    private CommandResult update(UpdateCommand command) throws IOException, ClassNotFoundException {
+        Long id = command.getId();
+        if (id == null || command.getMovie() == null || NodeIds.nodeOf(id) >= nodes.size()) {
+            return new CommandResult(CommandResult.Type.ERROR, "Movie is invalid");
+        }
+        int node = NodeIds.nodeOf(id);
+        int owner = ring.nodeFor(command.getMovie().getName());
+        if (owner == node) {
+            return nodes.get(node).exec(command);
+        }
+        CommandResult found = nodes.get(node).exec(new FindByIdCommand(id));
+        if (found.getType() != CommandResult.Type.SUCCESS) {
+            return new CommandResult(CommandResult.Type.ERROR, "There is no Record with id " + id);
+        }
+        Movie previous = (Movie) ((CommandResultWithObject) found).getObject();
+        Long expected = command.getExpectedVersion();
+        if (expected != null && expected != previous.getVersion()) {
+            return new CommandResult(CommandResult.Type.CONFLICT,
+                    "Record " + id + " has version " + previous.getVersion() + ", expected " + expected);
+        }
+        CommandResult inserted = nodes.get(owner).exec(new InsertCommand(command.getMovie()));
+        if (inserted.getType() != CommandResult.Type.SUCCESS) {
+            return inserted;
+        }
+        CommandResult removed = nodes.get(node).exec(new RemoveCommand(previous.getName(), previous.getVersion()));
+        if (removed.getType() == CommandResult.Type.CONFLICT) {
+            nodes.get(owner).exec(new RemoveCommand(command.getMovie().getName()));
+        }
+        return removed;
+    }
+
+    /**
+     * выполнить команду на всех серверах параллельно
+     * @param command команда
+     * @return результаты в порядке серверов
+     */
+    private List<CommandResult> scatter(MovieCommand command) throws IOException, ClassNotFoundException {
+        List<Callable<CommandResult>> calls = new ArrayList<Callable<CommandResult>>(nodes.size());
+        for (DbClient node : nodes) {
+            calls.add(() -> node.exec(command));
+        }
+        List<CommandResult> results = new ArrayList<CommandResult>(nodes.size());
+        try {
+            for (Future<CommandResult> future : executor.invokeAll(calls)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for nodes");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * найти первый неуспешный результат
+     * @return результат с ошибкой или null
+     */
+    private static CommandResult firstError(List<CommandResult> results) {
+        for (CommandResult result : results) {
+            if (result.getType() == CommandResult.Type.ERROR) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * порядок фильмов по размеру, в котором сервер возвращает коллекцию,
+     * размеры вычисляются один раз для каждого фильма
+     */
+    private static Comparator<Movie> bySize() {
+        Map<Movie, Integer> sizes = new IdentityHashMap<Movie, Integer>();
+        return Comparator.comparingInt((Movie movie) -> sizes.computeIfAbsent(movie, ObjectSizeComparator::getObjectSize))
+                .thenComparing(Movie::getId);
+    }
+
+    /**
+     * слить упорядоченные списки фильмов серверов
+     * @param results результаты серверов
+     * @param order порядок списков
+     * @param limit наибольшее количество фильмов, 0 - без ограничения
+     */
+    @SuppressWarnings("unchecked")
+    private static CommandResult mergeMovies(List<CommandResult> results, Comparator<Movie> order, int limit) {
+        CommandResult error = firstError(results);
+        if (error != null) {
+            return error;
+        }
+        List<List<Movie>> parts = new ArrayList<List<Movie>>(results.size());
+        for (CommandResult result : results) {
+            if (result.getType() == CommandResult.Type.SUCCESS) {
+                parts.add((List<Movie>) ((CommandResultWithObject) result).getObject());
+            }
+        }
+        List<Movie> movies = SortedMerge.merge(parts, order);
+        return new CommandResultWithObject(new ArrayList<Movie>(limit > 0 && movies.size() > limit ? movies.subList(0, limit) : movies));
+    }
+
+    /**
+     * получить страницу диапазона: с каждого сервера берутся первые offset + limit фильмов,
+     * страница выбирается из слитого списка
+     */
+    private CommandResult dateRange(DateRangeCommand range) throws IOException, ClassNotFoundException {
+        int head = range.getLimit() > 0 ? (int) Math.min(Integer.MAX_VALUE, (long) range.getOffset() + range.getLimit()) : 0;
+        CommandResult merged = mergeMovies(scatter(new DateRangeCommand(range.getField(), range.getFrom(), range.getTo(),
+                range.isDescending(), 0, head)), range.getField().comparator(range.isDescending()), head);
+        if (merged.getType() != CommandResult.Type.SUCCESS) {
+            return merged;
+        }
+        @SuppressWarnings("unchecked")
+        List<Movie> movies = (List<Movie>) ((CommandResultWithObject) merged).getObject();
+        int offset = Math.min(range.getOffset(), movies.size());
+        return new CommandResultWithObject(new ArrayList<Movie>(movies.subList(offset, movies.size())));
+    }
+
+    private static CommandResult maxByName(List<CommandResult> results) {
+        CommandResult error = firstError(results);
+        if (error != null) {
+            return error;
+        }
+        Movie max = null;
+        for (CommandResult result : results) {
+            if (result.getType() == CommandResult.Type.SUCCESS) {
+                Movie movie = (Movie) ((CommandResultWithObject) result).getObject();
+                if (max == null || movie.getName().compareTo(max.getName()) > 0) {
+                    max = movie;
+                }
+            }
+        }
+        return max != null ? new CommandResultWithObject(max) : results.get(0);
+    }
+
+    private CommandResult information(List<CommandResult> results) {
+        CommandResult error = firstError(results);
+        if (error != null) {
+            return error;
+        }
+        MoviesDbInformation first = (MoviesDbInformation) ((CommandResultWithObject) results.get(0)).getObject();
+        int count = 0;
+        long maxId = 0;
+        long dedupSaved = 0;
+        for (CommandResult result : results) {
+            MoviesDbInformation part = (MoviesDbInformation) ((CommandResultWithObject) result).getObject();
+            count += part.getElements_count();
+            maxId = Math.max(maxId, part.getMax_id());
+            dedupSaved += part.getDedup_saved_bytes();
+        }
+        return new CommandResultWithObject(new MoviesDbInformation(
+                getClass().getSimpleName() + "[" + nodes.size() + " x " + first.getCollection_type() + "]",
+                first.getInit_time(), count, maxId, dedupSaved));
+    }
+
+    /**
+     * результат команды изменения, разосланной всем серверам: успех, если команда
+     * что-то изменила хотя бы на одном сервере
+     */
+    private static CommandResult anySucceeded(List<CommandResult> results) {
+        CommandResult error = firstError(results);
+        if (error != null) {
+            return error;
+        }
+        for (CommandResult result : results) {
+            if (result.getType() == CommandResult.Type.SUCCESS) {
+                return result;
+            }
+        }
+        return results.get(0);
+    }
+
+    /**
+     * объединить статистику серверов: строки задержек помечаются номером сервера, счетчики складываются
+     */
+    private static CommandResult statistics(List<CommandResult> results) {
+        CommandResult error = firstError(results);
+        if (error != null) {
+            return error;
+        }
+        long bytesIn = 0;
+        long bytesOut = 0;
+        long cachedAnswers = 0;
+        Map<String, Long> answers = new LinkedHashMap<String, Long>();
+        List<ServerStatistics.Row> rows = new ArrayList<ServerStatistics.Row>();
+        for (int node = 0; node < results.size(); node++) {
+            ServerStatistics part = (ServerStatistics) ((CommandResultWithObject) results.get(node)).getObject();
+            bytesIn += part.getBytesIn();
+            bytesOut += part.getBytesOut();
+            cachedAnswers += part.getCachedAnswers();
+            part.getResults().forEach((type, count) -> answers.merge(type, count, Long::sum));
+            for (ServerStatistics.Row row : part.getRows()) {
+                rows.add(new ServerStatistics.Row(node + ":" + row.getCommand(), row.getPhase(), row.getCount(),
+                        row.getP50(), row.getP99(), row.getP999(), row.getMax()));
+            }
+        }
+        ServerStatistics merged = new ServerStatistics(bytesIn, bytesOut, cachedAnswers);
+        rows.forEach(merged::addRow);
+        answers.forEach(merged::addResult);
+        return new CommandResultWithObject(merged);
+    }
+
+    private static CommandResult mergeTables(List<CommandResult> results) {
+        CommandResult error = firstError(results);
+        if (error != null) {
+            return error;
+        }
+        AggregateTable first = (AggregateTable) ((CommandResultWithObject) results.get(0)).getObject();
+        AggregateTable.Accumulator merged = new AggregateTable.Accumulator(first.getMeasures());
+        for (CommandResult result : results) {
+            merged.merge((AggregateTable) ((CommandResultWithObject) result).getObject());
+        }
+        return new CommandResultWithObject(merged.toTable());
+    }
+}
@@ -0,0 +1,581 @@
+package org.dima.server;
+
+import org.dima.commands.ChangeEvent;
+import org.dima.commands.GroupKey;
+import org.dima.commands.MovieField;
+import org.dima.commands.MoviePredicate;
+import org.dima.commands.SpatialTarget;
+import org.dima.commands.TimeField;
+import org.dima.movies.AggregateTable;
+import org.dima.movies.CollectionSnapshot;
+import org.dima.movies.Movie;
+import org.dima.movies.MovieGenre;
+import org.dima.movies.MoviesDbInformation;
+import org.dima.movies.XmlParseException;
+import org.dima.tools.NodeIds;
+import org.dima.tools.SortedMerge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище коллекции, разделенное на несколько частей (шардов) по индентификатору фильма.
+ * У каждой части своя блокировка записи, свои индексы и свой файл,
+ * операции по одному ключу затрагивают одну часть, операции над всей коллекцией
+ * выполняются по частям параллельно с последующим слиянием результатов.
+ * Название фильма уникально во всей коллекции: вставка и переименование проверяют индексы
+ * названий всех частей под блокировкой названия
+ */
+public class ShardedMoviesDB implements MoviesStorage {
+    private static final int NAME_LOCKS = 64;
+
+    private final Path source;
+    private final List<MoviesDB> shards;
+    private final AtomicLong idSequence = new AtomicLong();
+    private final Canonicalizer canonicalizer = new Canonicalizer();
+    private final EventSequence events = new EventSequence();
+    private final Map<ChangeListener, ChangeListener> listeners = new ConcurrentHashMap<ChangeListener, ChangeListener>();
+    private final ReentrantLock[] nameLocks = new ReentrantLock[NAME_LOCKS];
+
+    /**
+     * Конструктор хранилища. При первом запуске, когда файлов частей еще нет,
+     * фильмы файла source раскладываются по частям и сохраняются в файлы частей;
+     * дальше коллекция читается только из файлов частей
+     *
+     * @param source    файл источника данных XML, части хранятся в файлах source.0, source.1, ...
+     * @param shardCount количество частей
+     * @throws XmlParseException Неверный формат данных
+     */
+    public ShardedMoviesDB(Path source, int shardCount) throws XmlParseException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.source = source;
+        for (int i = 0; i < NAME_LOCKS; i++) {
+            nameLocks[i] = new ReentrantLock();
+        }
+        boolean firstStart = !hasShardFiles(source);
+        List<MoviesDB> list = new ArrayList<MoviesDB>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            Path file = shardFile(i);
+            try {
+                if (!Files.exists(file)) {
+                    Files.createFile(file);
+                }
+            } catch (IOException e) {
+                throw new XmlParseException(e.getMessage());
+            }
+            list.add(new MoviesDB(file, idSequence, canonicalizer, events, true));
+        }
+        this.shards = Collections.unmodifiableList(list);
+        if (firstStart) {
+            importSource();
+        }
+        relocate();
+        mergeOrphans(shardCount);
+    }
+
+    /**
+     * проверить, хранится ли коллекция с файлом источника source по частям
+     *
+     * @param source файл источника данных XML
+     * @return True-если есть файл первой части source.0
+     */
+    public static boolean hasShardFiles(Path source) {
+        return Files.exists(shardFile(source, 0));
+    }
+
+    /**
+     * получить файл части коллекции
+     *
+     * @param shard номер части
+     * @return путь к файлу
+     */
+    private Path shardFile(int shard) {
+        return shardFile(source, shard);
+    }
+
+    private static Path shardFile(Path source, int shard) {
+        return source.resolveSibling(source.getFileName() + "." + shard);
+    }
+
+    /**
+     * разложить по частям фильмы файла источника и сохранить части
+     *
+     * @throws XmlParseException Неверный формат данных или ошибка записи
+     */
+    private void importSource() throws XmlParseException {
+        if (!Files.exists(source)) {
+            return;
+        }
+        try (MoviesDB whole = new MoviesDB(source, idSequence, canonicalizer, events, true)) {
+            for (Movie movie : whole.getMovies().values()) {
+                shardFor(movie.getId()).update(movie.getId(), movie);
+            }
+        }
+        try {
+            save();
+        } catch (Exception e) {
+            throw new XmlParseException(e.getMessage());
+        }
+    }
+
+    /**
+     * перенести фильмы, которые после изменения количества частей оказались не в своей части
+     */
+    private void relocate() {
+        for (int i = 0; i < shards.size(); i++) {
+            MoviesDB shard = shards.get(i);
+            for (Movie movie : shard.getMovies().values()) {
+                MoviesDB owner = shardFor(movie.getId());
+                if (owner != shard) {
+                    shard.delete(movie.getId());
+                    owner.update(movie.getId(), movie);
+                }
+            }
+        }
+    }
+
+    /**
+     * забрать фильмы из файлов частей, оставшихся после уменьшения количества частей
+     *
+     * @param shardCount текущее количество частей
+     * @throws XmlParseException Неверный формат данных или ошибка записи
+     */
+    private void mergeOrphans(int shardCount) throws XmlParseException {
+        for (int i = shardCount; Files.exists(shardFile(i)); i++) {
+            try (MoviesDB orphan = new MoviesDB(shardFile(i), idSequence, canonicalizer, events, true)) {
+                for (Movie movie : orphan.getMovies().values()) {
+                    shardFor(movie.getId()).update(movie.getId(), movie);
+                }
+            }
+            try {
+                save();
+                Files.delete(shardFile(i));
+            } catch (Exception e) {
+                throw new XmlParseException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * получить часть коллекции, которой принадлежит индентификатор
+     *
+     * @param id индентификатор
+     * @return часть коллекции
+     */
+    private MoviesDB shardFor(long id) {
+        return shards.get(Math.floorMod((int) ((id * 0x9E3779B97F4A7C15L) >>> 32), shards.size()));
+    }
+
+    /**
+     * получить часть коллекции, в которой находится фильм с заданным названием
+     *
+     * @param name название фильма
+     * @return часть коллекции или null
+     */
+    private MoviesDB shardForName(String name) {
+        for (MoviesDB shard : shards) {
+            if (shard.findByName(name) != null) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * выполнить функцию по всем частям параллельно
+     *
+     * @param function функция над частью коллекции
+     * @return результаты в порядке частей
+     */
+    private <T> List<T> parallel(Function<MoviesDB, T> function) {
+        return shards.parallelStream().map(function).collect(Collectors.toList());
+    }
+
+    @Override
+    public void save() throws Exception {
+        for (MoviesDB shard : shards) {
+            shard.save();
+        }
+    }
+
+    @Override
+    public List<Movie> getMoviesBySize() {
+        return SortedMerge.merge(parallel(MoviesDB::getMoviesBySize), sizeComparator());
+    }
+
+    @Override
+    public Comparator<Movie> sizeComparator() {
+        return Comparator.comparingInt((Movie movie) -> shardFor(movie.getId()).getObjectSize(movie.getId()))
+                .thenComparing(Movie::getId);
+    }
+
+    @Override
+    public MoviesDbInformation getInformation() {
+        List<MoviesDbInformation> parts = parallel(MoviesDB::getInformation);
+        LocalDateTime initTime = parts.get(0).getInit_time();
+        int count = 0;
+        long maxId = 0L;
+        for (MoviesDbInformation part : parts) {
+            count += part.getElements_count();
+            maxId = Math.max(maxId, part.getMax_id());
+        }
+        return new MoviesDbInformation(
+                getClass().getSimpleName() + "[" + shards.size() + " x " + parts.get(0).getCollection_type() + "]",
+                initTime,
+                count,
+                maxId,
+                parts.get(0).getDedup_saved_bytes()
+        );
+    }
+
+    /**
+     * версия коллекции - сумма версий частей, которая увеличивается при любом изменении
+     *
+     * @return текущая версия
+     */
+    @Override
+    public long getVersion() {
+        long version = 0;
+        for (MoviesDB shard : shards) {
+            version += shard.getVersion();
+        }
+        return version;
+    }
+
+    /**
+     * добавить получателя событий всех частей. Части нумеруют события общей нумерацией
+     * и публикуют версии под её монитором, поэтому события приходят в порядке номеров,
+     * а версия всей коллекции, которой заменяется версия в событии, не меняется во время вызова
+     */
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        ChangeListener shardListener = (event, previous) -> listener.changed(new ChangeEvent(
+                event.getType(), event.getId(), event.getMovie(), getVersion(), event.getSequence(), event.getTime()), previous);
+        if (listeners.putIfAbsent(listener, shardListener) == null) {
+            shards.forEach(shard -> shard.addChangeListener(shardListener));
+        }
+    }
+
+    @Override
+    public void removeChangeListener(ChangeListener listener) {
+        ChangeListener shardListener = listeners.remove(listener);
+        if (shardListener != null) {
+            shards.forEach(shard -> shard.removeChangeListener(shardListener));
+        }
+    }
+
+    /**
+     * получить снимок всей коллекции. Снимки частей открываются под монитором общей нумерации
+     * событий, поэтому вместе они содержат изменения ровно тех событий, номера которых
+     * не больше номера снимка; фильмы читаются из снимков частей параллельно.
+     * Версия - сумма версий снимков частей
+     */
+    @Override
+    public CollectionSnapshot snapshot() {
+        List<MoviesSnapshot> parts = new ArrayList<MoviesSnapshot>(shards.size());
+        long sequence;
+        synchronized (events) {
+            shards.forEach(shard -> parts.add(shard.openSnapshot()));
+            sequence = events.current();
+        }
+        try {
+            ArrayList<Movie> movies = parts.parallelStream()
+                    .flatMap(MoviesSnapshot::movies)
+                    .sorted(Comparator.comparing(Movie::getId))
+                    .collect(Collectors.toCollection(ArrayList::new));
+            long version = 0;
+            for (MoviesSnapshot part : parts) {
+                version += part.getVersion();
+            }
+            return new CollectionSnapshot(version, sequence, movies);
+        } finally {
+            parts.forEach(MoviesSnapshot::close);
+        }
+    }
+
+    /**
+     * разложить фильмы по частям и заменить содержимое частей параллельно
+     */
+    @Override
+    public void replace(List<Movie> movies) {
+        Map<MoviesDB, List<Movie>> parts = new IdentityHashMap<MoviesDB, List<Movie>>();
+        shards.forEach(shard -> parts.put(shard, new ArrayList<Movie>()));
+        movies.forEach(movie -> parts.get(shardFor(movie.getId())).add(movie));
+        parallel(shard -> {
+            shard.replace(parts.get(shard));
+            return null;
+        });
+    }
+
+    @Override
+    public void apply(ChangeEvent event) {
+        if (event.getType() != ChangeEvent.Type.RESYNC) {
+            shardFor(event.getId()).apply(event);
+        }
+    }
+
+    /**
+     * заблокировать название фильма на время проверки уникальности и записи
+     *
+     * @param name название фильма
+     * @return блокировка, которую нужно освободить после записи
+     */
+    private ReentrantLock lockName(String name) {
+        ReentrantLock lock = nameLocks[Math.floorMod(Objects.hashCode(name), NAME_LOCKS)];
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * проверить, что названия нет ни в одной части у другого фильма. Вызывается под блокировкой названия
+     *
+     * @param name название фильма
+     * @param id   индентификатор записываемого фильма или null для нового фильма
+     * @throws IllegalArgumentException название занято другим фильмом
+     */
+    private void checkName(String name, Long id) throws IllegalArgumentException {
+        if (name == null) {
+            return;
+        }
+        for (MoviesDB shard : shards) {
+            Long owner = shard.findByName(name);
+            if (owner != null && !owner.equals(id)) {
+                throw new IllegalArgumentException("Movie with name " + name + " already exists");
+            }
+        }
+    }
+
+    @Override
+    public void insert(Movie movie) throws IllegalArgumentException {
+        ReentrantLock lock = lockName(movie.getName());
+        try {
+            checkName(movie.getName(), null);
+            long id = NodeIds.next(idSequence);
+            shardFor(id).insert(movie, id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Movie findById(Long id) {
+        return id != null ? shardFor(id).findById(id) : null;
+    }
+
+    @Override
+    public Long findByName(String name) {
+        MoviesDB shard = name != null ? shardForName(name) : null;
+        return shard != null ? shard.findByName(name) : null;
+    }
+
+    @Override
+    public void update(Long id, Movie movie) throws IllegalArgumentException {
+        if (id == null || movie == null) {
+            throw new IllegalArgumentException("Movie is invalid");
+        }
+        ReentrantLock lock = lockName(movie.getName());
+        try {
+            checkName(movie.getName(), id);
+            shardFor(id).update(id, movie);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void update(Long id, Movie movie, long expectedVersion) throws IllegalArgumentException, VersionConflictException {
+        if (id == null || movie == null) {
+            throw new IllegalArgumentException("Movie is invalid");
+        }
+        ReentrantLock lock = lockName(movie.getName());
+        try {
+            checkName(movie.getName(), id);
+            shardFor(id).update(id, movie, expectedVersion);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String key) {
+        MoviesDB shard = key != null ? shardForName(key) : null;
+        return shard != null && shard.remove(key);
+    }
+
+    /**
+     * удалить фильм из части, в которой он находится. Если фильма нет ни в одной части,
+     * его версия считается равной 0
+     */
+    @Override
+    public boolean remove(String key, long expectedVersion) throws VersionConflictException {
+        MoviesDB shard = key != null ? shardForName(key) : null;
+        if (shard == null) {
+            if (expectedVersion != 0) {
+                throw new VersionConflictException(key, expectedVersion, 0);
+            }
+            return false;
+        }
+        return shard.remove(key, expectedVersion);
+    }
+
+    @Override
+    public void clear() {
+        parallel(shard -> {
+            shard.clear();
+            return null;
+        });
+    }
+
+    @Override
+    public Movie maxByName() {
+        return parallel(MoviesDB::maxByName).stream()
+                .filter(Objects::nonNull)
+                .max(Comparator.comparing(Movie::getName))
+                .orElse(null);
+    }
+
+    @Override
+    public int removeLowerKey(String key) {
+        return parallel(shard -> shard.removeLowerKey(key)).stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    @Override
+    public List<Movie> filterByName(String key) {
+        return SortedMerge.merge(parallel(shard -> shard.filterByName(key)), Comparator.naturalOrder());
+    }
+
+    @Override
+    public List<Movie> filterByGenre(MovieGenre genre) {
+        return SortedMerge.merge(parallel(shard -> shard.filterByGenre(genre)), Comparator.naturalOrder());
+    }
+
+    @Override
+    public int removeLower(Movie movie) {
+        return parallel(shard -> shard.removeLower(movie)).stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    @Override
+    public boolean replaceIfGreater(String key, Movie movie) {
+        ReentrantLock lock = lockName(movie.getName());
+        try {
+            MoviesDB shard = key != null ? shardForName(key) : null;
+            if (shard == null) {
+                return false;
+            }
+            checkName(movie.getName(), shard.findByName(key));
+            return shard.replaceIfGreater(key, movie);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean replaceIfGreater(String key, Movie movie, long expectedVersion) throws VersionConflictException {
+        ReentrantLock lock = lockName(movie.getName());
+        try {
+            MoviesDB shard = key != null ? shardForName(key) : null;
+            if (shard == null) {
+                if (expectedVersion != 0) {
+                    throw new VersionConflictException(key, expectedVersion, 0);
+                }
+                return false;
+            }
+            checkName(movie.getName(), shard.findByName(key));
+            return shard.replaceIfGreater(key, movie, expectedVersion);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(MoviesDB::close);
+    }
+
+    /**
+     * отобрать фильмы по условию во всех частях параллельно и слить упорядоченные результаты
+     */
+    @Override
+    public List<Movie> query(MoviePredicate filter, Comparator<Movie> order, int limit) {
+        List<Movie> result = SortedMerge.merge(parallel(shard -> shard.query(filter, order, limit)), order);
+        return limit > 0 && result.size() > limit ? new ArrayList<Movie>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * получить k первых фильмов каждой части параллельно и слить их в порядке поля
+     */
+    @Override
+    public List<Movie> topK(MoviePredicate filter, MovieField field, boolean descending, int k) {
+        List<Movie> result = SortedMerge.merge(parallel(shard -> shard.topK(filter, field, descending, k)), field.comparator(descending));
+        return result.size() > k ? new ArrayList<Movie>(result.subList(0, k)) : result;
+    }
+
+    /**
+     * получить из каждой части первые offset + limit фильмов диапазона параллельно,
+     * слить их в порядке времени и взять страницу из слитого списка
+     */
+    @Override
+    public List<Movie> dateRange(TimeField field, long from, long to, boolean descending, int offset, int limit) {
+        int head = limit > 0 ? (int) Math.min(Integer.MAX_VALUE, (long) offset + limit) : 0;
+        List<Movie> result = SortedMerge.merge(parallel(shard -> shard.dateRange(field, from, to, descending, 0, head)),
+                field.comparator(descending));
+        int end = limit > 0 ? Math.min(result.size(), head) : result.size();
+        return offset < end ? new ArrayList<Movie>(result.subList(offset, end)) : new ArrayList<Movie>();
+    }
+
+    /**
+     * найти фильмы режиссера во всех частях параллельно и слить их по индентификатору
+     */
+    @Override
+    public List<Movie> findByDirector(String key, boolean byName) {
+        return SortedMerge.merge(parallel(shard -> shard.findByDirector(key, byName)), Comparator.comparing(Movie::getId));
+    }
+
+    /**
+     * подсчитать фильмы режиссеров во всех частях параллельно и сложить количества
+     */
+    @Override
+    public AggregateTable countByDirector(String name) {
+        AggregateTable.Accumulator result = new AggregateTable.Accumulator(Collections.emptyList());
+        parallel(shard -> shard.countByDirector(name)).forEach(result::merge);
+        return result.toTable();
+    }
+
+    /**
+     * найти фильмы в прямоугольнике во всех частях параллельно и слить их по индентификатору
+     */
+    @Override
+    public List<Movie> withinBox(SpatialTarget target, double minX, double minY, double maxX, double maxY) {
+        return SortedMerge.merge(parallel(shard -> shard.withinBox(target, minX, minY, maxX, maxY)), Comparator.comparing(Movie::getId));
+    }
+
+    /**
+     * найти k ближайших фильмов в каждой части параллельно и слить их по расстоянию
+     */
+    @Override
+    public List<Movie> nearest(SpatialTarget target, double x, double y, int k) {
+        List<Movie> result = SortedMerge.merge(parallel(shard -> shard.nearest(target, x, y, k)), target.distance(x, y));
+        return result.size() > k ? new ArrayList<Movie>(result.subList(0, k)) : result;
+    }
+
+    /**
+     * подсчитать итоги во всех частях параллельно и слить итоги групп
+     */
+    @Override
+    public AggregateTable aggregate(MoviePredicate filter, GroupKey groupBy, List<MovieField> measures) {
+        List<AggregateTable> parts = parallel(shard -> shard.aggregate(filter, groupBy, measures));
+        AggregateTable.Accumulator result = new AggregateTable.Accumulator(parts.get(0).getMeasures());
+        parts.forEach(result::merge);
+        return result.toTable();
+    }
+}
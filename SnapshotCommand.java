@@ -0,0 +1,8 @@
+package org.dima.commands;
+
+/**
+ * Класс для сериализации в поток команды Snapshot - получения всех фильмов коллекции
+ * на одной версии для начального заполнения копии коллекции
+ */
+public class SnapshotCommand extends MovieCommand {
+}
@@ -0,0 +1,63 @@
+package org.dima.tools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Слияние упорядоченных списков, полученных от частей коллекции
+ */
+public final class SortedMerge {
+    private SortedMerge() {
+    }
+
+    /**
+     * слить упорядоченные списки в один упорядоченный список
+     *
+     * @param parts      упорядоченные списки
+     * @param comparator порядок
+     * @return объединенный список
+     */
+    public static <T> List<T> merge(List<? extends List<T>> parts, Comparator<? super T> comparator) {
+        int total = parts.stream().mapToInt(List::size).sum();
+        List<T> result = new ArrayList<T>(total);
+        PriorityQueue<PeekingIterator<T>> queue = new PriorityQueue<PeekingIterator<T>>(
+                Math.max(1, parts.size()), (a, b) -> comparator.compare(a.head, b.head));
+        for (List<T> part : parts) {
+            if (!part.isEmpty()) {
+                queue.add(new PeekingIterator<T>(part.iterator()));
+            }
+        }
+        while (!queue.isEmpty()) {
+            PeekingIterator<T> iterator = queue.poll();
+            result.add(iterator.head);
+            if (iterator.advance()) {
+                queue.add(iterator);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Итератор, хранящий текущий элемент для слияния списков
+     */
+    private static final class PeekingIterator<T> {
+        private final Iterator<T> iterator;
+        private T head;
+
+        PeekingIterator(Iterator<T> iterator) {
+            this.iterator = iterator;
+            this.head = iterator.next();
+        }
+
+        boolean advance() {
+            if (iterator.hasNext()) {
+                head = iterator.next();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package org.dima.server;
+
+import org.dima.tools.LongHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Пространственный индекс точек фильмов - равномерная сетка из квадратных ячеек.
+ * Ячейка хранит индентификаторы и координаты своих точек в растущих массивах.
+ * Изменяет индекс только владелец под блокировкой записи коллекции, читатели копируют
+ * точки ячейки без блокировки и повторяют копирование под блокировкой чтения ячейки,
+ * если ячейка изменилась во время копирования.
+ * Поиск ближайших точек обходит кольца ячеек вокруг заданной точки и останавливается,
+ * когда следующее кольцо заведомо дальше k-й найденной точки. Если кольца становятся
+ * больше занятой части сетки, оставшиеся занятые ячейки просматриваются по списку,
+ * а ячейки дальше k-й найденной точки пропускаются
+ */
+final class SpatialGrid {
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int INDEXED_SIZE = 32;
+
+    private final double cellSize;
+    private final Map<Long, Cell> cells = new ConcurrentHashMap<Long, Cell>();
+    private volatile int size = 0;
+
+    /**
+     * Точки ячейки: вставка дописывает точку в конец массивов, удаление переносит
+     * последнюю точку на место удаленной. В больших ячейках (например, у фильмов режиссеров
+     * из одного места) положение точки по индентификатору хранит таблица, которую читает
+     * и изменяет только владелец индекса
+     */
+    private static final class Cell {
+        final StampedLock lock = new StampedLock();
+        long[] ids = new long[INITIAL_CAPACITY];
+        double[] xs = new double[INITIAL_CAPACITY];
+        double[] ys = new double[INITIAL_CAPACITY];
+        int size;
+        LongHashMap<Integer> positions;
+
+        void add(long id, double x, double y) {
+            long stamp = lock.writeLock();
+            try {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    xs = Arrays.copyOf(xs, size * 2);
+                    ys = Arrays.copyOf(ys, size * 2);
+                }
+                ids[size] = id;
+                xs[size] = x;
+                ys[size] = y;
+                if (positions != null) {
+                    positions.put(id, size);
+                } else if (size + 1 == INDEXED_SIZE) {
+                    positions = new LongHashMap<Integer>();
+                    for (int i = 0; i <= size; i++) {
+                        positions.put(ids[i], i);
+                    }
+                }
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @return True-если точка была в ячейке
+         */
+        boolean remove(long id) {
+            long stamp = lock.writeLock();
+            try {
+                int i = position(id);
+                if (i < 0) {
+                    return false;
+                }
+                int last = --size;
+                ids[i] = ids[last];
+                xs[i] = xs[last];
+                ys[i] = ys[last];
+                if (positions != null) {
+                    positions.remove(id);
+                    if (i < last) {
+                        positions.put(ids[i], i);
+                    }
+                }
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private int position(long id) {
+            if (positions != null) {
+                Integer position = positions.get(id);
+                return position != null ? position : -1;
+            }
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * скопировать точки ячейки: без блокировки, если ячейка не изменилась во время копирования
+         * @param points буфер
+         */
+        void copyTo(Points points) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                points.copy(ids, xs, ys, size);
+                if (lock.validate(stamp)) {
+                    return;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                points.copy(ids, xs, ys, size);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Копия точек ячейки, буфер переиспользуется для всех ячеек одного поиска
+     */
+    private static final class Points {
+        long[] ids = new long[16];
+        double[] xs = new double[16];
+        double[] ys = new double[16];
+        int size;
+
+        void copy(long[] ids, double[] xs, double[] ys, int size) {
+            // при копировании без блокировки массивы и размер могут быть прочитаны из разных
+            // состояний ячейки: такая копия отбрасывается, но выход за границы недопустим
+            int n = Math.max(0, Math.min(size, Math.min(ids.length, Math.min(xs.length, ys.length))));
+            if (n > this.ids.length) {
+                int capacity = Math.max(n, this.ids.length * 2);
+                this.ids = new long[capacity];
+                this.xs = new double[capacity];
+                this.ys = new double[capacity];
+            }
+            System.arraycopy(ids, 0, this.ids, 0, n);
+            System.arraycopy(xs, 0, this.xs, 0, n);
+            System.arraycopy(ys, 0, this.ys, 0, n);
+            this.size = n;
+        }
+    }
+
+    /**
+     * Найденная точка и квадрат расстояния до неё
+     */
+    private static final class Candidate {
+        final long id;
+        final double distance;
+
+        Candidate(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Конструктор индекса
+     * @param cellSize сторона ячейки
+     */
+    SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    private long cell(double coordinate) {
+        double index = Math.floor(coordinate / cellSize);
+        return (long) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, index));
+    }
+
+    private static long key(long cellX, long cellY) {
+        return (cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * добавить точку
+     * @param id индентификатор фильма
+     * @param x координата x
+     * @param y координата y
+     */
+    void add(long id, double x, double y) {
+        cells.computeIfAbsent(key(cell(x), cell(y)), key -> new Cell()).add(id, x, y);
+        size++;
+    }
+
+    /**
+     * удалить точку
+     * @param id индентификатор фильма
+     * @param x координата x, с которой точка была добавлена
+     * @param y координата y, с которой точка была добавлена
+     */
+    void remove(long id, double x, double y) {
+        long key = key(cell(x), cell(y));
+        Cell cell = cells.get(key);
+        if (cell != null && cell.remove(id)) {
+            size--;
+            if (cell.size == 0) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Функция получения количества точек
+     * @return количество точек
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * найти точки в прямоугольнике
+     * @param minX левая граница включительно
+     * @param minY нижняя граница включительно
+     * @param maxX правая граница включительно
+     * @param maxY верхняя граница включительно
+     * @return индентификаторы фильмов
+     */
+    long[] within(double minX, double minY, double maxX, double maxY) {
+        long fromX = cell(minX);
+        long toX = cell(maxX);
+        long fromY = cell(minY);
+        long toY = cell(maxY);
+        Ids result = new Ids();
+        if (fromX > toX || fromY > toY) {
+            return result.toArray();
+        }
+        Points points = new Points();
+        if ((toX - fromX + 1) * (double) (toY - fromY + 1) > cells.size()) {
+            for (Cell cell : cells.values()) {
+                collect(cell, points, minX, minY, maxX, maxY, result);
+            }
+        } else {
+            for (long cellX = fromX; cellX <= toX; cellX++) {
+                for (long cellY = fromY; cellY <= toY; cellY++) {
+                    Cell cell = cells.get(key(cellX, cellY));
+                    if (cell != null) {
+                        collect(cell, points, minX, minY, maxX, maxY, result);
+                    }
+                }
+            }
+        }
+        return result.toArray();
+    }
+
+    private static void collect(Cell cell, Points points, double minX, double minY, double maxX, double maxY, Ids result) {
+        cell.copyTo(points);
+        for (int i = 0; i < points.size; i++) {
+            if (points.xs[i] >= minX && points.xs[i] <= maxX && points.ys[i] >= minY && points.ys[i] <= maxY) {
+                result.add(points.ids[i]);
+            }
+        }
+    }
+
+    /**
+     * Растущий массив найденных индентификаторов
+     */
+    private static final class Ids {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long id) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = id;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * найти ближайшие точки. Кольца ячеек обходятся, пока их общая площадь не превысит
+     * учетверенное количество занятых ячеек, поэтому поиск не дольше просмотра всех занятых ячеек
+     * даже для далеко разнесенных точек
+     * @param x координата x
+     * @param y координата y
+     * @param k количество точек
+     * @return индентификаторы фильмов в порядке возрастания расстояния
+     */
+    long[] nearest(double x, double y, int k) {
+        k = Math.min(k, size);
+        if (k <= 0) {
+            return new long[0];
+        }
+        PriorityQueue<Candidate> best = new PriorityQueue<Candidate>(
+                Math.min(k, 1024) + 1, (a, b) -> Double.compare(b.distance, a.distance));
+        Points points = new Points();
+        long centerX = cell(x);
+        long centerY = cell(y);
+        double ringLimit = 4.0 * cells.size();
+        long ring = 0;
+        for (; (2 * ring + 1) * (double) (2 * ring + 1) <= ringLimit; ring++) {
+            for (long dx = -ring; dx <= ring; dx++) {
+                boolean edge = dx == -ring || dx == ring;
+                for (long dy = -ring; dy <= ring; dy += edge ? 1 : Math.max(1, 2 * ring)) {
+                    Cell cell = cells.get(key(centerX + dx, centerY + dy));
+                    if (cell != null) {
+                        offer(cell, points, x, y, k, best);
+                    }
+                }
+            }
+            double reach = ring * cellSize;
+            if (best.size() == k && best.peek().distance <= reach * reach) {
+                return toArray(best);
+            }
+        }
+        long visited = ring - 1;
+        for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+            long cellX = entry.getKey() >> 32;
+            long cellY = (int) (long) entry.getKey();
+            if (Math.abs(cellX - centerX) <= visited && Math.abs(cellY - centerY) <= visited) {
+                continue;
+            }
+            if (best.size() == k && distance(cellX, cellY, x, y) >= best.peek().distance) {
+                continue;
+            }
+            offer(entry.getValue(), points, x, y, k, best);
+        }
+        return toArray(best);
+    }
+
+    private static void offer(Cell cell, Points points, double x, double y, int k, PriorityQueue<Candidate> best) {
+        cell.copyTo(points);
+        for (int i = 0; i < points.size; i++) {
+            double distX = points.xs[i] - x;
+            double distY = points.ys[i] - y;
+            double distance = distX * distX + distY * distY;
+            if (best.size() < k) {
+                best.add(new Candidate(points.ids[i], distance));
+            } else if (distance < best.peek().distance) {
+                best.poll();
+                best.add(new Candidate(points.ids[i], distance));
+            }
+        }
+    }
+
+    /**
+     * квадрат расстояния от точки до ближайшей точки ячейки
+     */
+    private double distance(long cellX, long cellY, double x, double y) {
+        double distX = Math.max(0, Math.max(cellX * cellSize - x, x - (cellX + 1) * cellSize));
+        double distY = Math.max(0, Math.max(cellY * cellSize - y, y - (cellY + 1) * cellSize));
+        return distX * distX + distY * distY;
+    }
+
+    private static long[] toArray(PriorityQueue<Candidate> best) {
+        long[] result = new long[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll().id;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+package org.dima.commands;
+
+import org.dima.movies.Movie;
+
+import java.util.Comparator;
+
+/**
+ * Точки фильма, по которым выполняется пространственный поиск
+ */
+public enum SpatialTarget {
+    /**
+     * координаты фильма
+     */
+    COORDINATES {
+        @Override
+        public double x(Movie movie) {
+            return movie.getCoordinates().getX();
+        }
+
+        @Override
+        public double y(Movie movie) {
+            return movie.getCoordinates().getY();
+        }
+    },
+    /**
+     * расположение режиссера фильма
+     */
+    LOCATION {
+        @Override
+        public double x(Movie movie) {
+            return movie.getDirector().getLocation().getX();
+        }
+
+        @Override
+        public double y(Movie movie) {
+            return movie.getDirector().getLocation().getY();
+        }
+    };
+
+    public abstract double x(Movie movie);
+
+    public abstract double y(Movie movie);
+
+    /**
+     * порядок фильмов по расстоянию от точки, при равном расстоянии - по индентификатору
+     * @param x координата x точки
+     * @param y координата y точки
+     * @return порядок
+     */
+    public Comparator<Movie> distance(double x, double y) {
+        return Comparator.<Movie>comparingDouble(movie -> Math.hypot(x(movie) - x, y(movie) - y))
+                .thenComparing(Movie::getId);
+    }
+}
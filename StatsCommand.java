@@ -0,0 +1,7 @@
+package org.dima.commands;
+
+/**
+ * Класс для сериализации в поток команды stats - получения статистики задержек обработки команд сервером
+ */
+public class StatsCommand extends MovieCommand {
+}
@@ -0,0 +1,79 @@
+package org.dima.commands;
+
+import org.dima.movies.Movie;
+import org.dima.movies.MovieGenre;
+
+/**
+ * Класс для сериализации в поток команды Subscribe - подписки на события изменения коллекции.
+ * После ответа на команду соединение служит только для отправки событий подписчику
+ */
+public class SubscribeCommand extends MovieCommand {
+    private final MovieGenre genre;
+    private final String namePrefix;
+    private final boolean keysOnly;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param genre жанр фильмов, об изменении которых сообщать, или null для всех жанров
+     * @param namePrefix начало названия фильмов, об изменении которых сообщать, или null для всех названий
+     */
+    public SubscribeCommand(MovieGenre genre, String namePrefix) {
+        this(genre, namePrefix, false);
+    }
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param genre жанр фильмов, об изменении которых сообщать, или null для всех жанров
+     * @param namePrefix начало названия фильмов, об изменении которых сообщать, или null для всех названий
+     * @param keysOnly True-события без фильмов, только тип, индентификатор и версия (для сбрасывания кэшей)
+     */
+    public SubscribeCommand(MovieGenre genre, String namePrefix, boolean keysOnly) {
+        this.genre = genre;
+        this.namePrefix = namePrefix;
+        this.keysOnly = keysOnly;
+    }
+
+    /**
+     * Функция получения значения поля genre
+     * @return возвращает значение поля genre
+     */
+    public MovieGenre getGenre() {
+        return genre;
+    }
+
+    /**
+     * Функция получения значения поля namePrefix
+     * @return возвращает значение поля namePrefix
+     */
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    /**
+     * Функция получения значения поля keysOnly
+     * @return возвращает значение поля keysOnly
+     */
+    public boolean isKeysOnly() {
+        return keysOnly;
+    }
+
+    /**
+     * Функция проверки, что фильм подходит под условие подписки
+     * @param movie фильм или null
+     * @return True-фильм задан и подходит
+     */
+    public boolean matches(Movie movie) {
+        return movie != null
+                && (genre == null || genre == movie.getGenre())
+                && (namePrefix == null || movie.getName().startsWith(namePrefix));
+    }
+
+    @Override
+    public String toString() {
+        return "SubscribeCommand{" +
+                "genre=" + genre +
+                ", namePrefix='" + namePrefix + '\'' +
+                ", keysOnly=" + keysOnly +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package org.dima.server;
+
+import org.dima.commands.ChangeEvent;
+import org.dima.commands.SubscribeCommand;
+import org.dima.movies.Movie;
+
+import java.util.ArrayDeque;
+import java.util.function.LongSupplier;
+
+/**
+ * Подписка соединения на события изменения коллекции с ограниченным буфером.
+ * Если подписчик не успевает забирать события и буфер заполнен, накопленные события
+ * отбрасываются, а вместо них подписчик получит одно событие RESYNC с текущей версией коллекции.
+ * Подписка только на ключи получает события без фильмов.
+ * Размер буфера задает свойство movies.subscription.buffer (по умолчанию 1024 события)
+ */
+final class Subscription implements ChangeListener {
+    private final SubscribeCommand filter;
+    private final int capacity;
+    private final LongSupplier version;
+    private final Runnable wakeup;
+    private final ArrayDeque<ChangeEvent> buffer = new ArrayDeque<ChangeEvent>();
+    private boolean overflow = false;
+    private long dropped = 0;
+
+    /**
+     * Конструктор подписки
+     * @param filter условие подписки
+     * @param version текущая версия коллекции для события RESYNC
+     * @param wakeup оповещение потока, отправляющего события
+     */
+    Subscription(SubscribeCommand filter, LongSupplier version, Runnable wakeup) {
+        this.filter = filter;
+        this.capacity = Integer.getInteger("movies.subscription.buffer", 1024);
+        this.version = version;
+        this.wakeup = wakeup;
+    }
+
+    @Override
+    public void changed(ChangeEvent event, Movie previous) {
+        if (!filter.matches(event.getMovie()) && !filter.matches(previous)) {
+            return;
+        }
+        synchronized (this) {
+            if (overflow) {
+                dropped++;
+                return;
+            }
+            if (buffer.size() == capacity) {
+                dropped += buffer.size() + 1;
+                buffer.clear();
+                overflow = true;
+            } else if (filter.isKeysOnly()) {
+                buffer.add(new ChangeEvent(event.getType(), event.getId(), null, event.getVersion(), event.getSequence(), event.getTime()));
+            } else {
+                buffer.add(event);
+            }
+        }
+        wakeup.run();
+    }
+
+    /**
+     * забрать следующее событие для отправки
+     * @return событие или null, если событий нет
+     */
+    synchronized ChangeEvent poll() {
+        if (overflow) {
+            overflow = false;
+            return new ChangeEvent(ChangeEvent.Type.RESYNC, 0, null, version.getAsLong(), 0);
+        }
+        return buffer.poll();
+    }
+
+    /**
+     * Функция получения количества отброшенных событий
+     * @return количество событий
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,23 @@
+package org.dima.client;
+
+import org.dima.commands.ChangeEvent;
+
+/**
+ * Получатель событий изменения коллекции, на которые подписан {@link DbClient}.
+ * Вызывается потоком подписки по порядку событий
+ */
+public interface SubscriptionListener {
+    /**
+     * получено событие. Событие RESYNC означает, что часть событий пропущена
+     * и коллекцию нужно прочитать заново
+     * @param event событие
+     */
+    void onEvent(ChangeEvent event);
+
+    /**
+     * подписка завершена: соединение закрыто клиентом или сервером
+     * @param cause причина или null при закрытии клиентом
+     */
+    default void onClosed(Exception cause) {
+    }
+}
@@ -0,0 +1,68 @@
+package org.dima.commands;
+
+import org.dima.movies.Movie;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.function.ToLongFunction;
+
+/**
+ * Поля фильма со временем, по которым ведутся упорядоченные индексы.
+ * Значение поля представлено числом: дата создания - номером дня от начала эпохи,
+ * день рождения режиссера - секундой от начала эпохи
+ */
+public enum TimeField {
+    CREATION_DATE(movie -> movie.getCreationDate().toEpochDay(), value -> LocalDate.parse(value).toEpochDay()),
+    DIRECTOR_BIRTHDAY(movie -> movie.getDirector().getBirthday().toEpochSecond(), value -> {
+        try {
+            return ZonedDateTime.parse(value).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        }
+    });
+
+    private final ToLongFunction<Movie> getter;
+    private final ToLongFunction<String> parser;
+
+    TimeField(ToLongFunction<Movie> getter, ToLongFunction<String> parser) {
+        this.getter = getter;
+        this.parser = parser;
+    }
+
+    /**
+     * Функция получения значения поля фильма
+     * @param movie фильм
+     * @return значение поля числом
+     */
+    public long get(Movie movie) {
+        return getter.applyAsLong(movie);
+    }
+
+    /**
+     * Функция разбора значения поля из строки: даты yyyy-MM-dd,
+     * для дня рождения также даты со временем и часовым поясом
+     * @param value строка
+     * @return значение поля числом
+     * @throws IllegalArgumentException строка не является значением поля
+     */
+    public long parse(String value) throws IllegalArgumentException {
+        try {
+            return parser.applyAsLong(value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid value for " + this + ": " + value);
+        }
+    }
+
+    /**
+     * Функция получения порядка фильмов по значению поля, при равных значениях - по индентификатору
+     * @param descending True-по убыванию, False-по возрастанию
+     * @return порядок
+     */
+    public Comparator<Movie> comparator(boolean descending) {
+        Comparator<Movie> order = Comparator.comparingLong(this::get).thenComparing(Movie::getId);
+        return descending ? order.reversed() : order;
+    }
+}
@@ -0,0 +1,295 @@
+package org.dima.tools;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Упорядоченный индекс пар (момент времени, индентификатор), где момент времени записан
+ * числом long - например, номером дня или секундой от начала эпохи.
+ * Основная часть индекса - неизменяемый отсортированный массив пар {@link Run},
+ * изменения накапливаются в небольшом дереве поверх массива (удаление записывается меткой)
+ * и сливаются с массивом в новый массив, когда дерево вырастает.
+ * Изменять индекс может только один поток, читать - любое количество потоков без блокировок:
+ * массив и дерево изменений публикуются вместе через volatile поле
+ */
+public class TimeIndex {
+    private static final int MIN_DELTA = 1024;
+
+    private volatile State state = new State(new Run());
+    private int deltaSize = 0;
+
+    /**
+     * Получатель элементов диапазона
+     */
+    public interface Visitor {
+        /**
+         * @param key момент времени
+         * @param id индентификатор
+         * @return True-продолжить перебор, False-остановить
+         */
+        boolean visit(long key, long id);
+    }
+
+    /**
+     * Массив пар (момент времени, индентификатор). Пары добавляются в конец,
+     * затем массив сортируется; отсортированные массивы сливаются в новый массив,
+     * поэтому куски коллекции можно сортировать параллельно
+     */
+    public static final class Run {
+        private long[] keys;
+        private long[] ids;
+        private int size = 0;
+
+        public Run() {
+            this(16);
+        }
+
+        private Run(int capacity) {
+            keys = new long[Math.max(capacity, 1)];
+            ids = new long[Math.max(capacity, 1)];
+        }
+
+        /**
+         * добавить пару в конец
+         * @param key момент времени
+         * @param id индентификатор
+         */
+        public void add(long key, long id) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            keys[size] = key;
+            ids[size] = id;
+            size++;
+        }
+
+        /**
+         * отсортировать пары слиянием
+         * @return этот массив
+         */
+        public Run sort() {
+            long[] fromKeys = keys;
+            long[] fromIds = ids;
+            long[] toKeys = new long[keys.length];
+            long[] toIds = new long[ids.length];
+            for (int width = 1; width < size; width *= 2) {
+                for (int low = 0; low < size; low += 2 * width) {
+                    int middle = Math.min(low + width, size);
+                    int high = Math.min(low + 2 * width, size);
+                    merge(fromKeys, fromIds, low, middle, fromKeys, fromIds, middle, high, toKeys, toIds, low);
+                }
+                long[] swap = fromKeys;
+                fromKeys = toKeys;
+                toKeys = swap;
+                swap = fromIds;
+                fromIds = toIds;
+                toIds = swap;
+            }
+            keys = fromKeys;
+            ids = fromIds;
+            return this;
+        }
+
+        /**
+         * слить с другим отсортированным массивом
+         * @param other отсортированный массив
+         * @return новый отсортированный массив
+         */
+        public Run merge(Run other) {
+            Run result = new Run(size + other.size);
+            merge(keys, ids, 0, size, other.keys, other.ids, 0, other.size, result.keys, result.ids, 0);
+            result.size = size + other.size;
+            return result;
+        }
+
+        /**
+         * Функция получения количества пар
+         * @return количество пар
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * первая пара, не меньшая заданной
+         */
+        private int lowerBound(long key, long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(keys[middle], ids[middle], key, id) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private boolean contains(long key, long id) {
+            int index = lowerBound(key, id);
+            return index < size && keys[index] == key && ids[index] == id;
+        }
+
+        private static void merge(long[] leftKeys, long[] leftIds, int left, int leftEnd,
+                                  long[] rightKeys, long[] rightIds, int right, int rightEnd,
+                                  long[] resultKeys, long[] resultIds, int result) {
+            while (left < leftEnd && right < rightEnd) {
+                if (compare(rightKeys[right], rightIds[right], leftKeys[left], leftIds[left]) < 0) {
+                    resultKeys[result] = rightKeys[right];
+                    resultIds[result++] = rightIds[right++];
+                } else {
+                    resultKeys[result] = leftKeys[left];
+                    resultIds[result++] = leftIds[left++];
+                }
+            }
+            System.arraycopy(leftKeys, left, resultKeys, result, leftEnd - left);
+            System.arraycopy(leftIds, left, resultIds, result, leftEnd - left);
+            result += leftEnd - left;
+            System.arraycopy(rightKeys, right, resultKeys, result, rightEnd - right);
+            System.arraycopy(rightIds, right, resultIds, result, rightEnd - right);
+        }
+    }
+
+    /**
+     * Пара в дереве изменений
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final long key;
+        final long id;
+
+        Entry(long key, long id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return compare(key, id, other.key, other.id);
+        }
+    }
+
+    /**
+     * Массив и дерево изменений поверх него: True - добавленная пара, False - удаленная из массива
+     */
+    private static final class State {
+        final Run run;
+        final ConcurrentSkipListMap<Entry, Boolean> delta = new ConcurrentSkipListMap<Entry, Boolean>();
+
+        State(Run run) {
+            this.run = run;
+        }
+    }
+
+    private static int compare(long key, long id, long otherKey, long otherId) {
+        int result = Long.compare(key, otherKey);
+        return result != 0 ? result : Long.compare(id, otherId);
+    }
+
+    /**
+     * добавить пару
+     * @param key момент времени
+     * @param id индентификатор
+     */
+    public void add(long key, long id) {
+        State s = state;
+        Entry entry = new Entry(key, id);
+        if (s.run.contains(key, id)) {
+            if (s.delta.remove(entry) != null) {
+                deltaSize--;
+            }
+        } else if (s.delta.put(entry, Boolean.TRUE) == null) {
+            deltaSize++;
+        }
+        mergeIfNeeded();
+    }
+
+    /**
+     * удалить пару
+     * @param key момент времени
+     * @param id индентификатор
+     */
+    public void remove(long key, long id) {
+        State s = state;
+        Entry entry = new Entry(key, id);
+        if (s.run.contains(key, id)) {
+            if (s.delta.put(entry, Boolean.FALSE) == null) {
+                deltaSize++;
+            }
+        } else if (s.delta.remove(entry) != null) {
+            deltaSize--;
+        }
+        mergeIfNeeded();
+    }
+
+    /**
+     * заменить содержимое индекса отсортированным массивом
+     * @param run отсортированный массив пар
+     */
+    public void reset(Run run) {
+        state = new State(run);
+        deltaSize = 0;
+    }
+
+    /**
+     * перебрать пары с моментами времени из диапазона по порядку
+     * @param from начало диапазона включительно
+     * @param to конец диапазона включительно
+     * @param descending True-от поздних к ранним, False-от ранних к поздним
+     * @param visitor получатель пар
+     */
+    public void range(long from, long to, boolean descending, Visitor visitor) {
+        if (from > to) {
+            return;
+        }
+        State s = state;
+        Run run = s.run;
+        NavigableMap<Entry, Boolean> delta = s.delta.subMap(new Entry(from, Long.MIN_VALUE), true, new Entry(to, Long.MAX_VALUE), true);
+        Iterator<Map.Entry<Entry, Boolean>> changes = (descending ? delta.descendingMap() : delta).entrySet().iterator();
+        Map.Entry<Entry, Boolean> change = changes.hasNext() ? changes.next() : null;
+        int step = descending ? -1 : 1;
+        int index = descending ? run.lowerBound(to, Long.MAX_VALUE) : run.lowerBound(from, Long.MIN_VALUE);
+        if (descending && (index == run.size || run.keys[index] > to || run.ids[index] != Long.MAX_VALUE)) {
+            index--;
+        }
+        while (true) {
+            boolean inRun = index >= 0 && index < run.size && (descending ? run.keys[index] >= from : run.keys[index] <= to);
+            if (!inRun && change == null) {
+                return;
+            }
+            int order = !inRun ? 1 : change == null ? -1
+                    : step * compare(run.keys[index], run.ids[index], change.getKey().key, change.getKey().id);
+            if (order < 0) {
+                if (!visitor.visit(run.keys[index], run.ids[index])) {
+                    return;
+                }
+                index += step;
+            } else {
+                if (order == 0) {
+                    index += step;
+                }
+                if (change.getValue() && !visitor.visit(change.getKey().key, change.getKey().id)) {
+                    return;
+                }
+                change = changes.hasNext() ? changes.next() : null;
+            }
+        }
+    }
+
+    private void mergeIfNeeded() {
+        State s = state;
+        if (deltaSize > Math.max(MIN_DELTA, s.run.size / 8)) {
+            Run run = new Run(s.run.size + deltaSize);
+            range(Long.MIN_VALUE, Long.MAX_VALUE, false, (key, id) -> {
+                run.add(key, id);
+                return true;
+            });
+            reset(run);
+        }
+    }
+}
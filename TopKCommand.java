@@ -0,0 +1,74 @@
+package org.dima.commands;
+
+/**
+ * Класс для сериализации в поток команды TopK - получения k первых фильмов
+ * в порядке значения поля
+ */
+public class TopKCommand extends MovieCommand {
+    private final MovieField field;
+    private final int k;
+    private final boolean descending;
+    private final MoviePredicate filter;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param field поле, по которому упорядочиваются фильмы
+     * @param k количество фильмов
+     * @param descending True-наибольшие значения, False-наименьшие
+     * @param filter условие отбора фильмов или null
+     */
+    public TopKCommand(MovieField field, int k, boolean descending, MoviePredicate filter) {
+        if (field == null) {
+            throw new IllegalArgumentException("Field is not set");
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.field = field;
+        this.k = k;
+        this.descending = descending;
+        this.filter = filter;
+    }
+
+    /**
+     * Функция получения значения поля field
+     * @return возвращает значение поля field
+     */
+    public MovieField getField() {
+        return field;
+    }
+
+    /**
+     * Функция получения значения поля k
+     * @return возвращает значение поля k
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Функция получения значения поля descending
+     * @return возвращает значение поля descending
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Функция получения значения поля filter
+     * @return возвращает значение поля filter
+     */
+    public MoviePredicate getFilter() {
+        return filter;
+    }
+
+    @Override
+    public String toString() {
+        return "TopKCommand{" +
+                "field=" + field +
+                ", k=" + k +
+                ", descending=" + descending +
+                ", filter=" + filter +
+                '}';
+    }
+}
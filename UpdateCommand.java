@@ -11,6 +11,7 @@ import java.io.Serializable;
 public class UpdateCommand extends MovieCommand {
     private final Movie movie;
     private final Long id;
+    private final Long expectedVersion;
 
     /**
      * Конструктор - создание нового объекта с определенными значениями
@@ -18,8 +19,19 @@ public class UpdateCommand extends MovieCommand {
      * @param movie объект фильма
      */
     public UpdateCommand(Long id, Movie movie) {
+        this(id, movie, null);
+    }
+
+    /**
+     * Конструктор условного изменения: фильм изменяется, только если версия записи не изменилась
+     * @param id номер фильма в коллекции
+     * @param movie объект фильма
+     * @param expectedVersion ожидаемая версия записи, null - изменить без проверки
+     */
+    public UpdateCommand(Long id, Movie movie, Long expectedVersion) {
         this.movie = movie;
         this.id = id;
+        this.expectedVersion = expectedVersion;
     }
 
     /**
@@ -38,4 +50,11 @@ public class UpdateCommand extends MovieCommand {
         return movie;
     }
 
+    /**
+     * Функция получения значения поля expectedVersion
+     * @return возвращает значение поля expectedVersion
+     */
+    public Long getExpectedVersion() {
+        return expectedVersion;
+    }
 }
@@ -0,0 +1,37 @@
+package org.dima.server;
+
+/**
+ * Исключение выбрасываемое при условном изменении записи, версия которой отличается от ожидаемой
+ */
+public class VersionConflictException extends RuntimeException {
+    private final long expectedVersion;
+    private final long actualVersion;
+
+    /**
+     * конструктор исключения
+     * @param key индентификатор или название фильма
+     * @param expectedVersion версия, которую ожидал клиент
+     * @param actualVersion текущая версия записи, 0 - записи нет
+     */
+    public VersionConflictException(Object key, long expectedVersion, long actualVersion) {
+        super("Record " + key + " has version " + actualVersion + ", expected " + expectedVersion);
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+
+    /**
+     * Функция получения значения поля expectedVersion
+     * @return возвращает значение поля expectedVersion
+     */
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    /**
+     * Функция получения значения поля actualVersion
+     * @return возвращает значение поля actualVersion
+     */
+    public long getActualVersion() {
+        return actualVersion;
+    }
+}
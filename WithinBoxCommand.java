@@ -0,0 +1,101 @@
+package org.dima.commands;
+
+import org.dima.movies.CanValidate;
+
+/**
+ * Класс для сериализации в поток команды WithinBox - получения фильмов,
+ * точки которых лежат в прямоугольнике
+ */
+public class WithinBoxCommand extends MovieCommand implements CanValidate {
+    private final SpatialTarget target;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    /**
+     * Конструктор - создание нового объекта с определенными значениями
+     * @param target точки фильма, по которым выполняется поиск
+     * @param minX левая граница включительно
+     * @param minY нижняя граница включительно
+     * @param maxX правая граница включительно
+     * @param maxY верхняя граница включительно
+     */
+    public WithinBoxCommand(SpatialTarget target, double minX, double minY, double maxX, double maxY) {
+        if (target == null) {
+            throw new IllegalArgumentException("Target is not set");
+        }
+        if (!(minX <= maxX) || !(minY <= maxY)) {
+            throw new IllegalArgumentException("Box is empty");
+        }
+        if (!Double.isFinite(minX) || !Double.isFinite(minY) || !Double.isFinite(maxX) || !Double.isFinite(maxY)) {
+            throw new IllegalArgumentException("Box must be finite");
+        }
+        this.target = target;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Проверка параметров команды
+     * @return True-параметры допустимы
+     */
+    @Override
+    public boolean validate() {
+        return target != null && minX <= maxX && minY <= maxY
+                && Double.isFinite(minX) && Double.isFinite(minY) && Double.isFinite(maxX) && Double.isFinite(maxY);
+    }
+
+    /**
+     * Функция получения значения поля target
+     * @return возвращает значение поля target
+     */
+    public SpatialTarget getTarget() {
+        return target;
+    }
+
+    /**
+     * Функция получения значения поля minX
+     * @return возвращает значение поля minX
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Функция получения значения поля minY
+     * @return возвращает значение поля minY
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Функция получения значения поля maxX
+     * @return возвращает значение поля maxX
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Функция получения значения поля maxY
+     * @return возвращает значение поля maxY
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+
+    @Override
+    public String toString() {
+        return "WithinBoxCommand{" +
+                "target=" + target +
+                ", minX=" + minX +
+                ", minY=" + minY +
+                ", maxX=" + maxX +
+                ", maxY=" + maxY +
+                '}';
+    }
+}
@@ -0,0 +1,303 @@
+package org.dima.server;
+
+import org.dima.movies.*;
+import org.dima.tools.ObjectSizeComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеры JMH операций коллекции {@link MoviesDB} в памяти, без сети и без записи в файл.
+ * Коллекция заполняется синтетическими фильмами, размер коллекции задает параметр size.
+ * Запуск всех замеров с профилировщиком сборки мусора - {@link #main(String[])}, отдельных -
+ * обычными параметрами JMH, например {@code -p size=1000000 -prof gc findById}.
+ * Для коллекции из 10 000 000 фильмов нужна куча в несколько гигабайт: {@code -jvmArgsAppend -Xmx16g}.
+ * <p>
+ * Замеры лежат в отдельном каталоге jmh/src и собираются отдельно от сервера, поэтому исходники
+ * сервера компилируются без JMH. Сначала компилируются классы сервера, затем замеры - с JMH
+ * (jmh-core, jmh-generator-annprocess и их зависимости jopt-simple и commons-math3 в каталоге lib)
+ * на пути классов; процессор аннотаций из jmh-generator-annprocess создает классы замеров
+ * и список замеров META-INF/BenchmarkList:
+ * <pre>
+ * javac -encoding UTF-8 -cp lib/slf4j-api.jar:lib/logback-classic.jar:lib/logback-core.jar -d out *.java
+ * javac -encoding UTF-8 -cp out:lib/* -d jmh/out jmh/src/org/dima/server/MoviesDBBenchmark.java
+ * java -cp out:jmh/out:lib/* org.dima.server.MoviesDBBenchmark
+ * </pre>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoviesDBBenchmark {
+    /**
+     * количество фильмов, которые изменяющие замеры вставляют или удаляют за один вызов
+     */
+    private static final int BATCH = 1000;
+
+    /**
+     * количество фильмов, которые сортируются {@link ObjectSizeComparator}: сравнение сериализует
+     * оба фильма, поэтому сортировка всей большой коллекции заняла бы минуты
+     */
+    private static final int SORT_SAMPLE = 10000;
+
+    /**
+     * Заполненная коллекция, общая для всех потоков замера
+     */
+    @State(Scope.Benchmark)
+    public static class Collection {
+        @Param({"1000", "100000", "1000000", "10000000"})
+        public int size;
+
+        MoviesDB db;
+        Path source;
+        Long[] ids;
+        String[] names;
+        List<Movie> sample;
+
+        @Setup(Level.Trial)
+        public void fill() throws IOException, XmlParseException {
+            source = Files.createTempFile("movies-benchmark", ".xml");
+            db = new MoviesDB(source);
+            ids = new Long[size];
+            names = new String[size];
+            for (int i = 0; i < size; i++) {
+                Movie movie = movie(name("Movie", i), i);
+                db.insert(movie);
+                ids[i] = movie.getId();
+                names[i] = movie.getName();
+            }
+            sample = new ArrayList<Movie>(Math.min(size, SORT_SAMPLE));
+            for (int i = 0; i < Math.min(size, SORT_SAMPLE); i++) {
+                sample.add(db.findById(ids[(int) ((long) i * size / Math.min(size, SORT_SAMPLE))]));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            db.close();
+            Files.deleteIfExists(source);
+        }
+
+        int randomIndex() {
+            return ThreadLocalRandom.current().nextInt(size);
+        }
+    }
+
+    /**
+     * Пачка фильмов для замера вставки: перед каждым вызовом удаляется пачка,
+     * вставленная предыдущим вызовом, так что размер коллекции не растет
+     */
+    @State(Scope.Thread)
+    public static class InsertBatch {
+        Movie[] movies = new Movie[BATCH];
+
+        @Setup(Level.Invocation)
+        public void prepare(Collection collection) {
+            for (int i = 0; i < BATCH; i++) {
+                if (movies[i] != null) {
+                    collection.db.remove(movies[i].getName());
+                }
+                movies[i] = movie(name("Batch", i), i);
+            }
+        }
+    }
+
+    /**
+     * Пачка фильмов для замера удаления: перед каждым вызовом пачка вставляется заново
+     */
+    @State(Scope.Thread)
+    public static class RemoveBatch {
+        String[] names = new String[BATCH];
+
+        @Setup(Level.Invocation)
+        public void prepare(Collection collection) {
+            for (int i = 0; i < BATCH; i++) {
+                Movie movie = movie(name("Batch", i), i);
+                collection.db.insert(movie);
+                names[i] = movie.getName();
+            }
+        }
+    }
+
+    /**
+     * Пачка фильмов с именами меньше всех фильмов коллекции, которую удаляют
+     * removeLower и removeLowerKey: перед каждым вызовом пачка вставляется заново
+     */
+    @State(Scope.Thread)
+    public static class LowerBatch {
+        Movie bound;
+
+        @Setup(Level.Invocation)
+        public void prepare(Collection collection) {
+            for (int i = 0; i < BATCH; i++) {
+                collection.db.insert(movie(name("Batch", i), i));
+            }
+            bound = movie("Movie", 0);
+        }
+    }
+
+    /**
+     * синтетическое имя фильма, имена с одним префиксом упорядочены по номеру
+     * @param prefix префикс
+     * @param i номер
+     * @return имя
+     */
+    static String name(String prefix, int i) {
+        return String.format("%s %08d", prefix, i);
+    }
+
+    /**
+     * синтетический фильм: жанры, рейтинги, режиссеры и места повторяются с разными периодами
+     * @param name имя фильма
+     * @param i номер фильма
+     * @return фильм
+     */
+    static Movie movie(String name, int i) {
+        Movie movie = new Movie();
+        movie.setName(name);
+        movie.setCreationDate(LocalDate.now());
+        movie.setGenre(MovieGenre.values()[i % MovieGenre.values().length]);
+        movie.setMpaaRating(MpaaRating.values()[i % MpaaRating.values().length]);
+        movie.setOscarsCount(1 + i % 7);
+        Coordinates coordinates = new Coordinates();
+        coordinates.setX(i % 250);
+        coordinates.setY(i % 500);
+        movie.setCoordinates(coordinates);
+        Person director = new Person();
+        director.setName("Director " + i % 1000);
+        director.setPassportID("P" + i % 1000);
+        director.setBirthday(ZonedDateTime.of(1940 + i % 60, 1 + i % 12, 1, 0, 0, 0, 0, ZoneId.of("UTC")));
+        director.setHairColor(Color.values()[i % Color.values().length]);
+        Location location = new Location();
+        location.setX(i % 300);
+        location.setY(i % 400);
+        location.setName("Location " + i % 100);
+        director.setLocation(location);
+        movie.setDirector(director);
+        return movie;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insert(Collection collection, InsertBatch batch) {
+        for (Movie movie : batch.movies) {
+            collection.db.insert(movie);
+        }
+    }
+
+    @Benchmark
+    public Movie findById(Collection collection) {
+        return collection.db.findById(collection.ids[collection.randomIndex()]);
+    }
+
+    @Benchmark
+    public Long findByName(Collection collection) {
+        return collection.db.findByName(collection.names[collection.randomIndex()]);
+    }
+
+    @Benchmark
+    public void update(Collection collection) {
+        int i = collection.randomIndex();
+        Movie movie = movie(collection.names[i], i);
+        movie.setId(collection.ids[i]);
+        collection.db.update(collection.ids[i], movie);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int remove(Collection collection, RemoveBatch batch) {
+        int removed = 0;
+        for (String name : batch.names) {
+            if (collection.db.remove(name)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Benchmark
+    public List<Movie> filterByName(Collection collection) {
+        return collection.db.filterByName("0042");
+    }
+
+    @Benchmark
+    public List<Movie> filterByGenre(Collection collection) {
+        return collection.db.filterByGenre(MovieGenre.COMEDY);
+    }
+
+    @Benchmark
+    public int removeLower(Collection collection, LowerBatch batch) {
+        return collection.db.removeLower(batch.bound);
+    }
+
+    @Benchmark
+    public int removeLowerKey(Collection collection, LowerBatch batch) {
+        return collection.db.removeLowerKey(batch.bound.getName());
+    }
+
+    @Benchmark
+    public Movie maxByName(Collection collection) {
+        return collection.db.maxByName();
+    }
+
+    @Benchmark
+    public MoviesDbInformation getInformation(Collection collection) {
+        return collection.db.getInformation();
+    }
+
+    @Benchmark
+    public List<Movie> getMoviesBySize(Collection collection) {
+        return collection.db.getMoviesBySize();
+    }
+
+    @Benchmark
+    public List<Movie> sortByObjectSize(Collection collection) {
+        List<Movie> movies = new ArrayList<Movie>(collection.sample);
+        movies.sort(new ObjectSizeComparator());
+        return movies;
+    }
+
+    /**
+     * запустить все замеры с профилировщиком сборки мусора
+     * @param args размеры коллекции, по умолчанию все значения параметра size
+     * @throws RunnerException
+     */
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include(MoviesDBBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class);
+        if (args.length > 0) {
+            builder.param("size", args);
+        }
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}